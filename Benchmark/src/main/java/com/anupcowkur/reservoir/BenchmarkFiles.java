@@ -0,0 +1,80 @@
+package com.anupcowkur.reservoir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class BenchmarkFiles {
+
+    /**
+     * The total size of the entries a benchmark stores before it starts measuring.
+     */
+    private static final long DATA_SET_SIZE = 64 * 1024 * 1024;
+
+    private static final int MIN_KEY_COUNT = 4;
+
+    private static final int MAX_KEY_COUNT = 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    static File createTempDirectory() throws IOException {
+        return Files.createTempDirectory("reservoir-benchmark").toFile();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Returns the number of entries of the given size to store before measuring, so that small
+     * payloads are spread over many entries and large ones don't fill the disk.
+     */
+    static int keyCount(int payloadSize) {
+        return (int) Math.max(MIN_KEY_COUNT, Math.min(MAX_KEY_COUNT, DATA_SET_SIZE / payloadSize));
+    }
+
+    /**
+     * Returns the size of the cache to open for the given data set, with room to spare so that
+     * nothing is evicted while measuring.
+     */
+    static long cacheSize(int payloadSize, int keyCount) {
+        return 4L * payloadSize * keyCount;
+    }
+
+    static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns a string of the given length, which serializes to about as many bytes.
+     */
+    static String randomString(int length) {
+        Random random = new Random(length);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    static String storedKey(int index) {
+        return "stored-" + index;
+    }
+
+    static String missingKey(int index) {
+        return "missing-" + index;
+    }
+}
@@ -0,0 +1,153 @@
+package com.anupcowkur.reservoir;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures {@link SimpleDiskCache} on its own, without serialization or the memory cache. Before
+ * measuring, the cache is filled with entries of the payload size. Reads pick a stored key with
+ * the probability given by the hit ratio and a key that was never stored otherwise. Writes use
+ * keys of their own thread, since the disk cache doesn't allow concurrent writes of a key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class DiskCacheBenchmark {
+
+    @Param({"100", "1024", "102400", "1048576", "10485760"})
+    public int payloadSize;
+
+    private File directory;
+
+    private SimpleDiskCache cache;
+
+    private byte[] payload;
+
+    private int keyCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory();
+        payload = BenchmarkFiles.randomBytes(payloadSize);
+        keyCount = BenchmarkFiles.keyCount(payloadSize);
+        cache = SimpleDiskCache.open(directory, 1,
+                BenchmarkFiles.cacheSize(payloadSize, keyCount), -1);
+        for (int i = 0; i < keyCount; i++) {
+            cache.put(BenchmarkFiles.storedKey(i), payload);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        cache.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long get(Reads reads) throws IOException {
+        SimpleDiskCache.EntryInputStream in = cache.getInputStream(reads.nextKey(keyCount));
+        if (in == null) {
+            return -1;
+        }
+        try {
+            long total = 0;
+            int count;
+            while ((count = in.read(reads.buffer)) != -1) {
+                total += count;
+            }
+            return total;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public boolean contains(Reads reads) throws IOException {
+        return cache.contains(reads.nextKey(keyCount));
+    }
+
+    @Benchmark
+    public void put(Writes writes) throws IOException {
+        cache.put(writes.key, payload);
+    }
+
+    /**
+     * Stores a new entry and deletes it again, so that the cache is the same after every
+     * invocation. The time of a delete is this minus the time of {@link #put}.
+     */
+    @Benchmark
+    public void putAndDelete(Writes writes) throws IOException {
+        cache.put(writes.deletedKey, payload);
+        cache.delete(writes.deletedKey);
+    }
+
+    @State(Scope.Thread)
+    public static class Reads {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        @Param({"1.0", "0.5", "0.0"})
+        public double hitRatio;
+
+        private final byte[] buffer = new byte[8192];
+
+        private Random random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new Random(threads.getAndIncrement());
+        }
+
+        String nextKey(int keyCount) {
+            int index = random.nextInt(keyCount);
+            return random.nextDouble() < hitRatio
+                    ? BenchmarkFiles.storedKey(index) : BenchmarkFiles.missingKey(index);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writes {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        private String key;
+
+        private String deletedKey;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int thread = threads.getAndIncrement();
+            key = "written-" + thread;
+            deletedKey = "deleted-" + thread;
+        }
+    }
+
+    @Threads(1)
+    public static class SingleThreaded extends DiskCacheBenchmark {
+    }
+
+    @Threads(4)
+    public static class MultiThreaded extends DiskCacheBenchmark {
+    }
+}
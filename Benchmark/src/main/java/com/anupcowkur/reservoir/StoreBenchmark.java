@@ -0,0 +1,163 @@
+package com.anupcowkur.reservoir;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.schedulers.Schedulers;
+
+/**
+ * Measures the synchronous operations of a {@link ReservoirStore}, which is what the Reservoir
+ * facade runs for every operation, including serialization of the stored strings with Gson. The
+ * store is filled, its keys picked and its writes spread over threads the same way as in
+ * {@link DiskCacheBenchmark}. A miss costs what it costs callers of Reservoir, including the
+ * NullPointerException thrown by {@link ReservoirStore#get(String, Class)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class StoreBenchmark {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Param({"100", "1024", "102400", "1048576", "10485760"})
+    public int payloadSize;
+
+    /**
+     * The size of the memory cache in bytes, or 0 to read every entry from disk.
+     */
+    @Param({"0", "67108864"})
+    public long memoryCacheSize;
+
+    private File directory;
+
+    private ReservoirStore store;
+
+    private String payload;
+
+    private int keyCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkFiles.createTempDirectory();
+        payload = BenchmarkFiles.randomString(payloadSize);
+        keyCount = BenchmarkFiles.keyCount(payloadSize);
+        ReservoirConfig config =
+                new ReservoirConfig.Builder(BenchmarkFiles.cacheSize(payloadSize, keyCount))
+                        .memoryCacheSize(memoryCacheSize)
+                        .build();
+        store = new ReservoirStore(new File(directory, "Reservoir"), config, DIRECT_EXECUTOR,
+                DIRECT_EXECUTOR, DIRECT_EXECUTOR, Schedulers.immediate());
+        for (int i = 0; i < keyCount; i++) {
+            store.put(BenchmarkFiles.storedKey(i), payload);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        BenchmarkFiles.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public String get(Reads reads) throws IOException {
+        try {
+            return store.get(reads.nextKey(keyCount), String.class);
+        } catch (NullPointerException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public boolean contains(Reads reads) throws IOException {
+        return store.contains(reads.nextKey(keyCount));
+    }
+
+    @Benchmark
+    public void put(Writes writes) throws IOException {
+        store.put(writes.key, payload);
+    }
+
+    /**
+     * Stores a new entry and deletes it again, so that the store is the same after every
+     * invocation. The time of a delete is this minus the time of {@link #put}.
+     */
+    @Benchmark
+    public void putAndDelete(Writes writes) throws IOException {
+        store.put(writes.deletedKey, payload);
+        store.delete(writes.deletedKey);
+    }
+
+    @State(Scope.Thread)
+    public static class Reads {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        @Param({"1.0", "0.5", "0.0"})
+        public double hitRatio;
+
+        private Random random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new Random(threads.getAndIncrement());
+        }
+
+        String nextKey(int keyCount) {
+            int index = random.nextInt(keyCount);
+            return random.nextDouble() < hitRatio
+                    ? BenchmarkFiles.storedKey(index) : BenchmarkFiles.missingKey(index);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writes {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        private String key;
+
+        private String deletedKey;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int thread = threads.getAndIncrement();
+            key = "written-" + thread;
+            deletedKey = "deleted-" + thread;
+        }
+    }
+
+    @Threads(1)
+    public static class SingleThreaded extends StoreBenchmark {
+    }
+
+    @Threads(4)
+    public static class MultiThreaded extends StoreBenchmark {
+    }
+}
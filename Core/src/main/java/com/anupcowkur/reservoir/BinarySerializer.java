@@ -0,0 +1,385 @@
+package com.anupcowkur.reservoir;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Serializer} that stores objects in a binary format. Objects are mapped to and from
+ * their JSON tree with Gson, so anything Gson can serialize is supported, but the tree is written
+ * in binary: integers as variable length integers, floating point numbers as 8 byte doubles and
+ * field names only once per value. It can also read straight from memory mapped entries, see
+ * {@link ReservoirConfig.Builder#mappedReadThreshold}.
+ * <p>
+ * Lengths and counts read back are checked against the bytes that are left where those are
+ * known, and a malformed value fails with an {@link IOException}.
+ */
+public class BinarySerializer implements BufferSerializer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int VERSION = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_TRUE = 1;
+    private static final int TAG_FALSE = 2;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_DECIMAL = 6;
+    private static final int TAG_ARRAY = 7;
+    private static final int TAG_OBJECT = 8;
+
+    /**
+     * Strings longer than this are read from streams in chunks of this size, so that a corrupt
+     * length runs into the end of the stream instead of allocating its full size up front.
+     */
+    private static final int STRING_CHUNK_SIZE = 8192;
+
+    private final Gson gson;
+
+    public BinarySerializer() {
+        this(new Gson());
+    }
+
+    /**
+     * @param gson the Gson instance used to map objects to and from their JSON tree.
+     */
+    public BinarySerializer(Gson gson) {
+        this.gson = gson;
+    }
+
+    @Override
+    public void serialize(Object object, OutputStream out) throws IOException {
+        JsonElement element = object == null ? JsonNull.INSTANCE : gson.toJsonTree(object);
+        Writer writer = new Writer(new BufferedOutputStream(out));
+        writer.writeByte(VERSION);
+        writer.writeElement(element);
+        writer.out.flush();
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Type type) throws IOException {
+        InputStream buffered = new BufferedInputStream(in);
+        int version = buffered.read();
+        if (version == -1) {
+            return null;
+        }
+        return read(new StreamReader(buffered), version, type);
+    }
+
+    /**
+     * Reads an object straight from the given buffer, without copying its contents.
+     */
+    @Override
+    public <T> T deserialize(ByteBuffer buffer, Type type) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        ByteBuffer contents = buffer.slice();
+        return read(new BufferReader(contents), contents.get() & 0xFF, type);
+    }
+
+    private <T> T read(Reader reader, int version, Type type) throws IOException {
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary format version " + version);
+        }
+        return gson.fromJson(reader.readElement(), type);
+    }
+
+    private static class Writer {
+        private final OutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+
+        private Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        private void writeElement(JsonElement element) throws IOException {
+            if (element.isJsonNull()) {
+                writeByte(TAG_NULL);
+            } else if (element.isJsonPrimitive()) {
+                writePrimitive(element.getAsJsonPrimitive());
+            } else if (element.isJsonArray()) {
+                JsonArray array = element.getAsJsonArray();
+                writeByte(TAG_ARRAY);
+                writeVarint(array.size());
+                for (JsonElement child : array) {
+                    writeElement(child);
+                }
+            } else {
+                JsonObject object = element.getAsJsonObject();
+                writeByte(TAG_OBJECT);
+                writeVarint(object.entrySet().size());
+                for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                    writeName(entry.getKey());
+                    writeElement(entry.getValue());
+                }
+            }
+        }
+
+        private void writePrimitive(JsonPrimitive primitive) throws IOException {
+            if (primitive.isBoolean()) {
+                writeByte(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            } else if (primitive.isString()) {
+                writeByte(TAG_STRING);
+                writeString(primitive.getAsString());
+            } else {
+                Number number = primitive.getAsNumber();
+                if (number instanceof Integer || number instanceof Long || number instanceof Short
+                        || number instanceof Byte || number instanceof AtomicInteger
+                        || number instanceof AtomicLong
+                        || (number instanceof BigInteger && ((BigInteger) number).bitLength() < 64)) {
+                    writeByte(TAG_INTEGER);
+                    long value = number.longValue();
+                    writeVarint((value << 1) ^ (value >> 63));
+                } else if (number instanceof Double || number instanceof Float) {
+                    writeByte(TAG_DOUBLE);
+                    long bits = Double.doubleToLongBits(number.doubleValue());
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        out.write((int) (bits >>> shift));
+                    }
+                } else {
+                    writeByte(TAG_DECIMAL);
+                    writeString(number.toString());
+                }
+            }
+        }
+
+        /**
+         * Writes a field name. Names seen before in this value are written as a reference to
+         * their first occurrence.
+         */
+        private void writeName(String name) throws IOException {
+            Integer index = names.get(name);
+            if (index != null) {
+                writeVarint(index + 1);
+            } else {
+                names.put(name, names.size());
+                writeVarint(0);
+                writeString(name);
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            byte[] bytes = string.getBytes(UTF_8);
+            writeVarint(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private void writeByte(int value) throws IOException {
+            out.write(value);
+        }
+    }
+
+    /**
+     * Reads the binary format from a stream or a buffer.
+     */
+    private abstract static class Reader {
+        private final List<String> names = new ArrayList<>();
+
+        private JsonElement readElement() throws IOException {
+            int tag = readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return JsonNull.INSTANCE;
+                case TAG_TRUE:
+                    return new JsonPrimitive(true);
+                case TAG_FALSE:
+                    return new JsonPrimitive(false);
+                case TAG_INTEGER:
+                    long value = readVarint();
+                    return new JsonPrimitive((value >>> 1) ^ -(value & 1));
+                case TAG_DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++) {
+                        bits = (bits << 8) | readByte();
+                    }
+                    return new JsonPrimitive(Double.longBitsToDouble(bits));
+                case TAG_STRING:
+                    return new JsonPrimitive(readString());
+                case TAG_DECIMAL:
+                    return new JsonPrimitive(new BigDecimal(readString()));
+                case TAG_ARRAY:
+                    int size = readLength();
+                    JsonArray array = new JsonArray();
+                    for (int i = 0; i < size; i++) {
+                        array.add(readElement());
+                    }
+                    return array;
+                case TAG_OBJECT:
+                    int fieldCount = readLength();
+                    JsonObject object = new JsonObject();
+                    for (int i = 0; i < fieldCount; i++) {
+                        String name = readName();
+                        object.add(name, readElement());
+                    }
+                    return object;
+                default:
+                    throw new IOException("Unknown tag " + tag);
+            }
+        }
+
+        private String readName() throws IOException {
+            int reference = readLength();
+            if (reference == 0) {
+                String name = readString();
+                names.add(name);
+                return name;
+            }
+            if (reference > names.size()) {
+                throw new IOException("Unknown name reference " + reference);
+            }
+            return names.get(reference - 1);
+        }
+
+        abstract String readString() throws IOException;
+
+        /**
+         * Reads a length or a count. Every element and every byte of a string takes at least a
+         * byte, so a length can't be larger than the number of bytes that are left.
+         */
+        int readLength() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > Integer.MAX_VALUE || length > remaining()) {
+                throw new IOException("Malformed length " + length);
+            }
+            return (int) length;
+        }
+
+        /**
+         * Returns the number of bytes that are left to read, or {@link Long#MAX_VALUE} if it isn't
+         * known.
+         */
+        abstract long remaining();
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        abstract int readByte() throws IOException;
+    }
+
+    private static class StreamReader extends Reader {
+        private final InputStream in;
+
+        private StreamReader(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        String readString() throws IOException {
+            int length = readLength();
+            if (length <= STRING_CHUNK_SIZE) {
+                byte[] bytes = new byte[length];
+                readFully(bytes, length);
+                return new String(bytes, UTF_8);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(STRING_CHUNK_SIZE);
+            byte[] chunk = new byte[STRING_CHUNK_SIZE];
+            for (int left = length; left > 0; left -= STRING_CHUNK_SIZE) {
+                int count = Math.min(left, STRING_CHUNK_SIZE);
+                readFully(chunk, count);
+                bytes.write(chunk, 0, count);
+            }
+            return new String(bytes.toByteArray(), UTF_8);
+        }
+
+        private void readFully(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                offset += read;
+            }
+        }
+
+        @Override
+        long remaining() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        int readByte() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            return b;
+        }
+    }
+
+    /**
+     * Reads straight from a buffer. Strings are decoded from the buffer without copying their
+     * bytes out of it first.
+     */
+    private static class BufferReader extends Reader {
+        private final ByteBuffer buffer;
+
+        private BufferReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        String readString() throws IOException {
+            int length = readLength();
+            ByteBuffer bytes = buffer.slice();
+            bytes.limit(length);
+            buffer.position(buffer.position() + length);
+            return UTF_8.decode(bytes).toString();
+        }
+
+        @Override
+        long remaining() {
+            return buffer.remaining();
+        }
+
+        @Override
+        int readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                throw new EOFException();
+            }
+            return buffer.get() & 0xFF;
+        }
+    }
+}
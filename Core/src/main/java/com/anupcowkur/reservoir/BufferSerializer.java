@@ -0,0 +1,28 @@
+package com.anupcowkur.reservoir;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Serializer} that can also read objects straight from a buffer. Stores configured
+ * with a {@link ReservoirConfig.Builder#mappedReadThreshold mapped read threshold} hand large
+ * entries to it as memory mapped buffers, so they are deserialized without being copied onto
+ * the heap first.
+ *
+ * @see BinarySerializer
+ */
+public interface BufferSerializer extends Serializer {
+
+    /**
+     * Reads an object of the given type from the remaining contents of the given buffer. The
+     * buffer is read-only and must not be used once this method returns.
+     *
+     * @param <T>    the type of the object to read.
+     * @param buffer the buffer to read from.
+     * @param type   the type of the object to read.
+     * @return the object, or null if the buffer holds no value.
+     * @throws IOException thrown if the buffer doesn't hold a valid value.
+     */
+    <T> T deserialize(ByteBuffer buffer, Type type) throws IOException;
+}
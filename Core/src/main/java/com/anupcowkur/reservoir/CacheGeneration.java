@@ -0,0 +1,212 @@
+package com.anupcowkur.reservoir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One generation of the disk cache. Clearing the cache doesn't delete the entries of the cache in
+ * use, it replaces the current generation with an empty one in a new directory. Operations
+ * acquire the generation they use and release it when they are done, and a replaced generation
+ * is only deleted once the last operation using it has released it. Generation 0 lives in the
+ * base directory and generation n in the base directory's path followed by ".n".
+ * <p>
+ * Deleting a generation with many entries takes a while, so the directories of replaced
+ * generations are deleted on a background thread. Generation numbers only grow, so a directory
+ * that is being deleted is never opened again.
+ */
+class CacheGeneration {
+
+    private static final int APP_VERSION = 1;
+
+    /**
+     * Deletes the directories of replaced generations, one at a time, on a low priority thread
+     * that is stopped when it is idle.
+     */
+    private static final Executor DELETE_EXECUTOR = newDeleteExecutor();
+
+    final int number;
+
+    final File directory;
+
+    final SimpleDiskCache cache;
+
+    /**
+     * The number of operations using this generation, plus one while it is the current one.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private volatile boolean delete;
+
+    private CacheGeneration(int number, File directory, SimpleDiskCache cache) {
+        this.number = number;
+        this.directory = directory;
+        this.cache = cache;
+    }
+
+    private static Executor newDeleteExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Reservoir cleanup");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Opens the latest generation in the given base directory and starts deleting any older ones
+     * that were left behind in the background, for example because the process died while they
+     * were still in use or being deleted.
+     */
+    static CacheGeneration openLatest(File baseDir, ReservoirConfig config) throws IOException {
+        int latest = 0;
+        File[] generations = generationDirectories(baseDir);
+        for (File directory : generations) {
+            latest = Math.max(latest, number(baseDir, directory));
+        }
+        for (File directory : generations) {
+            if (number(baseDir, directory) != latest) {
+                deleteInBackground(directory);
+            }
+        }
+        return open(baseDir, latest, config);
+    }
+
+    /**
+     * Opens a new, empty generation following this one.
+     */
+    CacheGeneration next(File baseDir, ReservoirConfig config) throws IOException {
+        File directory = directory(baseDir, number + 1);
+        deleteRecursively(directory);
+        return open(baseDir, number + 1, config);
+    }
+
+    private static CacheGeneration open(File baseDir, int number, ReservoirConfig config)
+            throws IOException {
+        File directory = directory(baseDir, number);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create cache directory!");
+        }
+        return new CacheGeneration(number, directory, SimpleDiskCache.open(directory, APP_VERSION,
+                config.maxSize, config.compressionThreshold));
+    }
+
+    /**
+     * Acquires this generation for an operation, which must release it when it is done.
+     *
+     * @return false if this generation has been closed already, in which case the caller should
+     * acquire the current one instead.
+     */
+    boolean acquire() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                cache.close();
+            } catch (IOException ignored) {
+                // Nothing else uses the generation, so there is nothing to do about it.
+            }
+            if (delete) {
+                deleteInBackground(directory);
+            }
+        }
+    }
+
+    /**
+     * Marks this generation as no longer current. It is closed, and deleted if requested, once
+     * the operations still using it have released it.
+     */
+    void retire(boolean delete) {
+        this.delete = delete;
+        release();
+    }
+
+    private static File directory(File baseDir, int number) {
+        return number == 0 ? baseDir : new File(baseDir.getPath() + "." + number);
+    }
+
+    private static File[] generationDirectories(File baseDir) {
+        File parent = baseDir.getParentFile();
+        File[] files = parent != null ? parent.listFiles() : null;
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].isDirectory() && number(baseDir, files[i]) >= 0) {
+                files[count++] = files[i];
+            }
+        }
+        File[] generations = new File[count];
+        System.arraycopy(files, 0, generations, 0, count);
+        return generations;
+    }
+
+    /**
+     * Returns the generation number of the given directory, or -1 if it isn't a generation of
+     * the given base directory.
+     */
+    private static int number(File baseDir, File directory) {
+        String base = baseDir.getName();
+        String name = directory.getName();
+        if (name.equals(base)) {
+            return 0;
+        }
+        if (!name.startsWith(base + ".")) {
+            return -1;
+        }
+        try {
+            int number = Integer.parseInt(name.substring(base.length() + 1));
+            return number > 0 ? number : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void deleteInBackground(final File directory) {
+        DELETE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    deleteRecursively(directory);
+                } catch (IOException ignored) {
+                    // Leftover directories of deleted generations are removed the next time the
+                    // cache is opened.
+                }
+            }
+        });
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + file);
+        }
+    }
+}
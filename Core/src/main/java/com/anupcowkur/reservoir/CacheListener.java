@@ -0,0 +1,54 @@
+package com.anupcowkur.reservoir;
+
+/**
+ * Receives an event for every operation of a store, for example to log slow or large keys or to
+ * feed a metrics library. Listeners are set with
+ * {@link ReservoirConfig.Builder#listener(CacheListener)}.
+ * <p>
+ * Events are delivered synchronously on the thread that ran the operation, so listeners must
+ * return quickly and must not call back into the store. Failed operations don't produce events.
+ */
+public interface CacheListener {
+
+    /**
+     * Called after an object was read.
+     *
+     * @param key             the key string.
+     * @param hit             whether the object was found.
+     * @param bytes           the size of the serialized object, or 0 if it was served by the
+     *                        memory cache or not found.
+     * @param ioNanos         the time spent reading the disk cache in nanoseconds.
+     * @param serializerNanos the time spent deserializing the object in nanoseconds.
+     */
+    void onGet(String key, boolean hit, long bytes, long ioNanos, long serializerNanos);
+
+    /**
+     * Called after an object was written.
+     *
+     * @param key             the key string.
+     * @param bytes           the size of the serialized object.
+     * @param ioNanos         the time spent writing the disk cache in nanoseconds.
+     * @param serializerNanos the time spent serializing the object in nanoseconds.
+     */
+    void onPut(String key, long bytes, long ioNanos, long serializerNanos);
+
+    /**
+     * Called after an object was deleted.
+     *
+     * @param key the key string.
+     */
+    void onDelete(String key);
+
+    /**
+     * Called when an object was evicted from the memory cache to make room for others.
+     *
+     * @param key   the key string.
+     * @param bytes the size of the serialized object.
+     */
+    void onEviction(String key, long bytes);
+
+    /**
+     * Called after the store was cleared.
+     */
+    void onClear();
+}
@@ -0,0 +1,145 @@
+package com.anupcowkur.reservoir;
+
+/**
+ * A snapshot of the statistics of a store since it was opened. Objects streamed by the
+ * Observables that emit the elements of a collection aren't counted.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long memoryHitCount;
+    private final long evictionCount;
+    private final long putCount;
+    private final long deleteCount;
+    private final long clearCount;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final LatencyHistogram readLatency;
+    private final LatencyHistogram writeLatency;
+    private final LatencyHistogram deserializeLatency;
+    private final LatencyHistogram serializeLatency;
+
+    CacheStats(long hitCount, long missCount, long memoryHitCount, long evictionCount,
+               long putCount, long deleteCount, long clearCount, long bytesRead,
+               long bytesWritten, LatencyHistogram readLatency, LatencyHistogram writeLatency,
+               LatencyHistogram deserializeLatency, LatencyHistogram serializeLatency) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.memoryHitCount = memoryHitCount;
+        this.evictionCount = evictionCount;
+        this.putCount = putCount;
+        this.deleteCount = deleteCount;
+        this.clearCount = clearCount;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.readLatency = readLatency;
+        this.writeLatency = writeLatency;
+        this.deserializeLatency = deserializeLatency;
+        this.serializeLatency = serializeLatency;
+    }
+
+    /**
+     * Returns the number of gets that found an object, including those served by the memory
+     * cache.
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of gets that found no object.
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the fraction of gets that found an object, or 0 if there were none.
+     */
+    public double hitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * Returns the number of gets that were served by the memory cache without reading the disk.
+     */
+    public long memoryHitCount() {
+        return memoryHitCount;
+    }
+
+    /**
+     * Returns the number of objects evicted from the memory cache. Evictions from the disk cache
+     * aren't counted, since DiskLruCache evicts entries without reporting them.
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    public long putCount() {
+        return putCount;
+    }
+
+    public long deleteCount() {
+        return deleteCount;
+    }
+
+    public long clearCount() {
+        return clearCount;
+    }
+
+    /**
+     * Returns the number of bytes of serialized objects read from disk, before any compression.
+     */
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of bytes of serialized objects written to disk, before any compression.
+     */
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the time gets from disk spent reading the disk cache, without deserializing.
+     */
+    public LatencyHistogram readLatency() {
+        return readLatency;
+    }
+
+    /**
+     * Returns the time puts spent writing the disk cache, without serializing.
+     */
+    public LatencyHistogram writeLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Returns the time gets from disk spent in the serializer.
+     */
+    public LatencyHistogram deserializeLatency() {
+        return deserializeLatency;
+    }
+
+    /**
+     * Returns the time puts spent in the serializer.
+     */
+    public LatencyHistogram serializeLatency() {
+        return serializeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount
+                + ", memoryHits=" + memoryHitCount + ", evictions=" + evictionCount
+                + ", puts=" + putCount + ", deletes=" + deleteCount + ", clears=" + clearCount
+                + ", bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten
+                + ", meanReadNanos=" + readLatency.meanNanos()
+                + ", meanWriteNanos=" + writeLatency.meanNanos()
+                + ", meanDeserializeNanos=" + deserializeLatency.meanNanos()
+                + ", meanSerializeNanos=" + serializeLatency.meanNanos() + "}";
+    }
+}
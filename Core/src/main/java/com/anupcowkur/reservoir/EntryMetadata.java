@@ -0,0 +1,115 @@
+package com.anupcowkur.reservoir;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The metadata stored alongside each cache entry. Entries with nothing to record have empty
+ * metadata files. Otherwise the metadata is a small binary header: a magic byte, a version byte
+ * and a flags byte, followed by the fields the flags call for. Flags that aren't known are
+ * rejected, since their fields can't be skipped, so new fields need a new version.
+ * <p>
+ * Reservoir 3.1.0 and earlier wrote a Java serialized map into every metadata file instead. That
+ * map was always empty, so metadata in that format is read as having no flags: the value is
+ * stored as is and never expires.
+ */
+class EntryMetadata {
+
+    private static final int MAGIC = 'R';
+
+    /**
+     * The first byte of a Java serialization stream, which starts the metadata written by
+     * Reservoir 3.1.0 and earlier.
+     */
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xAC;
+    private static final int VERSION = 1;
+
+    private static final int FLAG_DEFLATED = 1;
+    private static final int FLAG_EXPIRES = 1 << 1;
+    private static final int KNOWN_FLAGS = FLAG_DEFLATED | FLAG_EXPIRES;
+
+    /**
+     * Whether the value is deflated.
+     */
+    boolean deflated;
+
+    /**
+     * The length of the value before compression. Only recorded for deflated values.
+     */
+    long length;
+
+    /**
+     * The time in milliseconds since the epoch at which the entry expires, or 0 if it never
+     * does.
+     */
+    long expiresAt;
+
+    boolean isEmpty() {
+        return !deflated && expiresAt == 0;
+    }
+
+    boolean isExpired(long now) {
+        return expiresAt != 0 && now >= expiresAt;
+    }
+
+    void write(OutputStream out) throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeByte(MAGIC);
+        dos.writeByte(VERSION);
+        dos.writeByte((deflated ? FLAG_DEFLATED : 0) | (expiresAt != 0 ? FLAG_EXPIRES : 0));
+        if (deflated) {
+            dos.writeLong(length);
+        }
+        if (expiresAt != 0) {
+            dos.writeLong(expiresAt);
+        }
+        dos.flush();
+    }
+
+    /**
+     * Reads the metadata of an entry.
+     *
+     * @param in   the metadata stream.
+     * @param size the size of the metadata file in bytes.
+     * @return the metadata.
+     * @throws IOException thrown if the metadata cannot be read or is malformed.
+     */
+    static EntryMetadata read(InputStream in, long size) throws IOException {
+        EntryMetadata metadata = new EntryMetadata();
+        if (size == 0) {
+            return metadata;
+        }
+        DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(in, (int) Math.min(size, 8192)));
+        int magic = dis.readUnsignedByte();
+        if (magic == JAVA_SERIALIZATION_MAGIC) {
+            return metadata;
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Malformed entry metadata");
+        }
+        int version = dis.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported entry metadata version " + version);
+        }
+        int flags = dis.readUnsignedByte();
+        if ((flags & ~KNOWN_FLAGS) != 0) {
+            throw new IOException("Unsupported entry metadata flags " + flags);
+        }
+        if ((flags & FLAG_DEFLATED) != 0) {
+            metadata.deflated = true;
+            metadata.length = dis.readLong();
+        }
+        if ((flags & FLAG_EXPIRES) != 0) {
+            metadata.expiresAt = dis.readLong();
+        }
+        return metadata;
+    }
+}
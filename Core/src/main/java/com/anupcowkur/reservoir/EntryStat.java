@@ -0,0 +1,54 @@
+package com.anupcowkur.reservoir;
+
+/**
+ * The size and timestamps of a stored object, as returned by {@code stat}.
+ */
+public final class EntryStat {
+
+    private final long length;
+    private final long lastModified;
+    private final long expiresAt;
+    final String key;
+
+    /**
+     * @param key the key of the object, or null if it isn't known.
+     */
+    EntryStat(long length, long lastModified, long expiresAt, String key) {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.expiresAt = expiresAt;
+        this.key = key;
+    }
+
+    /**
+     * Returns the length of the serialized object in bytes, before any compression.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns the time in milliseconds since the epoch at which the object was stored.
+     */
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the time in milliseconds since the epoch at which the object expires, or 0 if it
+     * never does.
+     */
+    public long expiresAt() {
+        return expiresAt;
+    }
+
+    boolean isExpired(long now) {
+        return expiresAt != 0 && now >= expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "EntryStat{length=" + length + ", lastModified=" + lastModified + ", expiresAt="
+                + expiresAt + "}";
+    }
+}
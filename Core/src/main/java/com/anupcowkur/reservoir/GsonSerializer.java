@@ -0,0 +1,89 @@
+package com.anupcowkur.reservoir;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonNull;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link Serializer} that stores objects as JSON using Gson. This is the default serializer.
+ */
+public class GsonSerializer implements Serializer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Gson gson;
+
+    public GsonSerializer() {
+        this(new Gson());
+    }
+
+    /**
+     * @param gson the Gson instance.
+     */
+    public GsonSerializer(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * Serializes an object as JSON straight into the given stream, without building the whole
+     * JSON string in memory first.
+     */
+    @Override
+    public void serialize(Object object, OutputStream out) throws IOException {
+        JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(out, UTF_8));
+        try {
+            if (object == null) {
+                gson.toJson(JsonNull.INSTANCE, writer);
+            } else {
+                gson.toJson(object, object.getClass(), writer);
+            }
+        } catch (JsonIOException e) {
+            throw unwrap(e);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Deserializes an object from the JSON in the given stream, parsing it as it is read
+     * instead of loading the whole JSON string first.
+     */
+    @Override
+    public <T> T deserialize(InputStream in, Type type) throws IOException {
+        return read(newJsonReader(in), type);
+    }
+
+    JsonReader newJsonReader(InputStream in) {
+        return gson.newJsonReader(new InputStreamReader(in, UTF_8));
+    }
+
+    /**
+     * Deserializes the next value of the given reader.
+     *
+     * @return the object, or null if the reader is at the end of the document.
+     * @throws IOException thrown if the underlying stream cannot be read.
+     */
+    <T> T read(JsonReader reader, Type type) throws IOException {
+        try {
+            return gson.fromJson(reader, type);
+        } catch (JsonIOException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static IOException unwrap(JsonIOException e) {
+        if (e.getCause() instanceof IOException) {
+            return (IOException) e.getCause();
+        }
+        throw e;
+    }
+}
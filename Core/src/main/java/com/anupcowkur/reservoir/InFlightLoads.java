@@ -0,0 +1,98 @@
+package com.anupcowkur.reservoir;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the loads of objects that are in progress, so that requests for an object that
+ * is already being loaded as the same type can wait for that load instead of starting their own.
+ * Writing a key makes the loads in progress for it stale, so they must be forgotten before the
+ * write is started. Requests made after that start a new load.
+ */
+class InFlightLoads {
+
+    /**
+     * Receives the result of a load.
+     */
+    interface Listener {
+        void onLoaded(Object value);
+
+        void onFailed(Exception e);
+    }
+
+    private final Map<String, Map<Type, Load>> loads = new HashMap<>();
+
+    /**
+     * Adds a listener to the load of the given key and type that is in progress, or starts
+     * tracking a new load if there is none.
+     *
+     * @return the new load, which the caller must run and complete, or null if the listener was
+     * added to a load in progress.
+     */
+    synchronized Load join(String key, Type type, Listener listener) {
+        Map<Type, Load> loadsByType = loads.get(key);
+        if (loadsByType == null) {
+            loadsByType = new HashMap<>(2);
+            loads.put(key, loadsByType);
+        }
+        Load load = loadsByType.get(type);
+        if (load != null) {
+            load.listeners.add(listener);
+            return null;
+        }
+        load = new Load(key, type);
+        load.listeners.add(listener);
+        loadsByType.put(type, load);
+        return load;
+    }
+
+    /**
+     * Stops new requests for the given key from joining the loads in progress for it.
+     */
+    synchronized void forget(String key) {
+        loads.remove(key);
+    }
+
+    synchronized void forgetAll() {
+        loads.clear();
+    }
+
+    private synchronized List<Listener> finish(Load load) {
+        Map<Type, Load> loadsByType = loads.get(load.key);
+        if (loadsByType != null && loadsByType.get(load.type) == load) {
+            loadsByType.remove(load.type);
+            if (loadsByType.isEmpty()) {
+                loads.remove(load.key);
+            }
+        }
+        List<Listener> listeners = load.listeners;
+        load.listeners = null;
+        return listeners;
+    }
+
+    class Load {
+        private final String key;
+        private final Type type;
+        private List<Listener> listeners = new ArrayList<>(1);
+
+        private Load(String key, Type type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        void succeed(Object value) {
+            for (Listener listener : finish(this)) {
+                listener.onLoaded(value);
+            }
+        }
+
+        void fail(Exception e) {
+            for (Listener listener : finish(this)) {
+                listener.onFailed(e);
+            }
+        }
+    }
+}
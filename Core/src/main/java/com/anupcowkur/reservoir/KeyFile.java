@@ -0,0 +1,159 @@
+package com.anupcowkur.reservoir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The keys of a cache directory, which can't be recovered from the hashed names of the entry
+ * files. Keys are appended when they are first put, as an int length followed by the UTF-8
+ * bytes, and are never removed one by one: deleted and evicted keys are told apart by the
+ * absence of their entry, and the file is rewritten with the live keys only once most of its
+ * records are stale.
+ */
+class KeyFile {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private OutputStream out;
+    private boolean closed;
+    private boolean loaded;
+    private List<String> loadedKeys;
+
+    KeyFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the keys that were recorded when the file was opened, in the order they were
+     * appended and including duplicates. The keys are handed out once, later calls return an
+     * empty list.
+     */
+    synchronized List<String> read() throws IOException {
+        load();
+        List<String> keys = loadedKeys;
+        loadedKeys = null;
+        return keys != null ? keys : new ArrayList<String>();
+    }
+
+    /**
+     * Reads the file the first time it is needed. A record cut short by a crash is truncated
+     * away, which has to happen before anything is appended so that later records aren't lost
+     * behind it.
+     */
+    private void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            loaded = true;
+            loadedKeys = keys;
+            return;
+        }
+        long fileLength = file.length();
+        long position = 0;
+        try {
+            while (position < fileLength) {
+                int length = in.readInt();
+                if (length < 0 || length > fileLength - position - 4) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                keys.add(new String(bytes, UTF_8));
+                position += 4 + length;
+            }
+        } catch (EOFException e) {
+            // A torn record, dropped below.
+        } finally {
+            in.close();
+        }
+        if (position < fileLength) {
+            RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+            try {
+                truncated.setLength(position);
+            } finally {
+                truncated.close();
+            }
+        }
+        loaded = true;
+        loadedKeys = keys;
+    }
+
+    /**
+     * Records the given key. The record is written with a single write, so it is either
+     * complete or torn at the end of the file.
+     */
+    synchronized void append(String key) throws IOException {
+        if (closed) {
+            throw new IOException("Key file is closed");
+        }
+        load();
+        if (out == null) {
+            out = new FileOutputStream(file, true);
+        }
+        out.write(record(key));
+    }
+
+    /**
+     * Replaces the recorded keys with the given ones. The file is swapped in with a rename, so a
+     * crash leaves either the old keys or the new ones.
+     */
+    synchronized void rewrite(Collection<String> keys) throws IOException {
+        if (closed) {
+            return;
+        }
+        closeOutput();
+        File temp = new File(file.getPath() + ".tmp");
+        OutputStream rewritten = new BufferedOutputStream(new FileOutputStream(temp));
+        try {
+            for (String key : keys) {
+                rewritten.write(record(key));
+            }
+        } finally {
+            rewritten.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+        closeOutput();
+    }
+
+    private void closeOutput() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The records were written already.
+            }
+            out = null;
+        }
+    }
+
+    private static byte[] record(String key) {
+        byte[] bytes = key.getBytes(UTF_8);
+        return ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes).array();
+    }
+}
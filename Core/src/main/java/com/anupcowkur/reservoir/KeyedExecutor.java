@@ -0,0 +1,147 @@
+package com.anupcowkur.reservoir;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs Reservoir's background work. Reads and writes are handed to separate executors, so reads
+ * don't wait behind slow writes of other keys. Tasks that share a key run one at a time in the
+ * order they were submitted, so a get submitted after a put of the same key always sees it.
+ * Barrier tasks, such as clearing the cache, wait for every task submitted before them and hold
+ * back every task submitted after them.
+ */
+class KeyedExecutor {
+
+    private final Executor readExecutor;
+
+    private final Executor writeExecutor;
+
+    private final Map<String, Task> lastTaskByKey = new HashMap<>();
+
+    private final Set<Task> pending = new HashSet<>();
+
+    private Task barrier;
+
+    KeyedExecutor(Executor readExecutor, Executor writeExecutor) {
+        this.readExecutor = readExecutor;
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * Runs a task once every task submitted before it for any of the same keys has finished.
+     *
+     * @param keys     the keys the task reads or writes.
+     * @param write    whether the task writes, which decides the executor it runs on.
+     * @param runnable the task.
+     */
+    void execute(Collection<String> keys, boolean write, Runnable runnable) {
+        Task task = new Task(keys, write, runnable);
+        synchronized (this) {
+            for (String key : task.keys) {
+                Task previous = lastTaskByKey.put(key, task);
+                if (previous != null) {
+                    previous.addDependent(task);
+                }
+            }
+            if (barrier != null) {
+                barrier.addDependent(task);
+            }
+            pending.add(task);
+            if (task.waiting > 0) {
+                return;
+            }
+        }
+        dispatch(task);
+    }
+
+    /**
+     * Runs a writing task once every task submitted before it has finished. Tasks submitted
+     * after it wait for it to finish.
+     *
+     * @param runnable the task.
+     */
+    void executeBarrier(Runnable runnable) {
+        Task task = new Task(Collections.<String>emptySet(), true, runnable);
+        synchronized (this) {
+            for (Task previous : pending) {
+                previous.addDependent(task);
+            }
+            lastTaskByKey.clear();
+            barrier = task;
+            pending.add(task);
+            if (task.waiting > 0) {
+                return;
+            }
+        }
+        dispatch(task);
+    }
+
+    private void dispatch(final Task task) {
+        try {
+            (task.write ? writeExecutor : readExecutor).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.runnable.run();
+                    } finally {
+                        complete(task);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            complete(task);
+            throw e;
+        }
+    }
+
+    private void complete(Task task) {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            pending.remove(task);
+            for (String key : task.keys) {
+                if (lastTaskByKey.get(key) == task) {
+                    lastTaskByKey.remove(key);
+                }
+            }
+            if (barrier == task) {
+                barrier = null;
+            }
+            for (Task dependent : task.dependents) {
+                if (--dependent.waiting == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        for (Task next : ready) {
+            dispatch(next);
+        }
+    }
+
+    private static class Task {
+        private final Set<String> keys;
+        private final boolean write;
+        private final Runnable runnable;
+        private final List<Task> dependents = new ArrayList<>(1);
+        private int waiting;
+
+        private Task(Collection<String> keys, boolean write, Runnable runnable) {
+            this.keys = new LinkedHashSet<>(keys);
+            this.write = write;
+            this.runnable = runnable;
+        }
+
+        private void addDependent(Task task) {
+            dependents.add(task);
+            task.waiting++;
+        }
+    }
+}
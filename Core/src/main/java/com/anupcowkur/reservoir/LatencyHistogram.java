@@ -0,0 +1,117 @@
+package com.anupcowkur.reservoir;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A snapshot of the distribution of the durations of one kind of operation. Durations are
+ * counted in buckets whose bounds are powers of two nanoseconds: bucket {@code i} counts the
+ * durations of at least {@code 2^(i-1)} and less than {@code 2^i} nanoseconds, and the last
+ * bucket also counts everything longer. That is coarse, but recording a duration costs no more
+ * than a couple of atomic increments.
+ */
+public final class LatencyHistogram {
+
+    static final int BUCKET_COUNT = 40;
+
+    private final long[] buckets;
+
+    private final long count;
+
+    private final long totalNanos;
+
+    private LatencyHistogram(long[] buckets, long count, long totalNanos) {
+        this.buckets = buckets;
+        this.count = count;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the recorded durations in nanoseconds.
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the mean of the recorded durations in nanoseconds, or 0 if there are none.
+     */
+    public long meanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded durations, which is the
+     * upper bound of the bucket the percentile falls into.
+     *
+     * @param percentile the percentile as a fraction, for example 0.99 for the 99th percentile.
+     * @return the upper bound in nanoseconds, or 0 if there are no recorded durations.
+     */
+    public long percentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        }
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen > 0 && seen >= rank) {
+                return bucketUpperBoundNanos(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of recorded durations per bucket.
+     */
+    public long[] buckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * Returns the exclusive upper bound of the durations counted by the given bucket, in
+     * nanoseconds. The last bucket also counts longer durations.
+     */
+    public static long bucketUpperBoundNanos(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Records durations. Safe for use by several threads at once.
+     */
+    static class Recorder {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            buckets.incrementAndGet(Math.min(BUCKET_COUNT - 1,
+                    64 - Long.numberOfLeadingZeros(nanos)));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+
+        LatencyHistogram snapshot() {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new LatencyHistogram(counts, count.get(), totalNanos.get());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.anupcowkur.reservoir;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A size bounded in-memory cache of deserialized objects that sits in front of the disk cache.
+ * Entries are keyed by the Reservoir key together with the type they were deserialized as, and
+ * are weighed by the size of their serialized form. When the total weight exceeds the maximum
+ * size, the least recently used entries are evicted.
+ */
+class MemoryCache {
+
+    private final long maxSize;
+
+    private final StatsRecorder stats;
+
+    private final LinkedHashMap<EntryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, List<EntryKey>> entryKeysByKey = new HashMap<>();
+
+    private long size;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long modCount;
+
+    /**
+     * @param maxSize the maximum total weight of the entries.
+     * @param stats   the recorder that evictions are reported to.
+     */
+    MemoryCache(long maxSize, StatsRecorder stats) {
+        this.maxSize = maxSize;
+        this.stats = stats;
+    }
+
+    /**
+     * Returns the object stored for the given key and type, or null if there is none or it has
+     * expired.
+     */
+    synchronized Object get(String key, Type type) {
+        EntryKey entryKey = new EntryKey(key, type);
+        Entry entry = entries.get(entryKey);
+        if (entry != null && entry.expiresAt != 0
+                && System.currentTimeMillis() >= entry.expiresAt) {
+            remove(entryKey);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.value;
+    }
+
+    /**
+     * Returns a count of the removals so far. Read it before loading an object from disk and pass
+     * it to {@link #put}, so that an object loaded while it was being overwritten isn't stored.
+     */
+    synchronized long modCount() {
+        return modCount;
+    }
+
+    /**
+     * Stores an object for the given key and type, unless objects have been removed since the
+     * object was loaded.
+     *
+     * @param key       the key string.
+     * @param type      the type the object was deserialized as.
+     * @param value     the deserialized object.
+     * @param weight    the size of the serialized object in bytes.
+     * @param expiresAt the time in milliseconds since the epoch at which the object expires, or 0
+     *                  if it never does.
+     * @param modCount  the value of {@link #modCount()} before the object was loaded.
+     */
+    synchronized void put(String key, Type type, Object value, long weight, long expiresAt,
+                          long modCount) {
+        if (weight > maxSize || modCount != this.modCount) {
+            return;
+        }
+        EntryKey entryKey = new EntryKey(key, type);
+        Entry previous = entries.put(entryKey, new Entry(value, weight, expiresAt));
+        if (previous != null) {
+            size -= previous.weight;
+        } else {
+            List<EntryKey> entryKeys = entryKeysByKey.get(key);
+            if (entryKeys == null) {
+                entryKeys = new ArrayList<>(1);
+                entryKeysByKey.put(key, entryKeys);
+            }
+            entryKeys.add(entryKey);
+        }
+        size += weight;
+        trimToSize();
+    }
+
+    /**
+     * Removes all objects stored for the given key, whatever type they were deserialized as.
+     */
+    synchronized void remove(String key) {
+        modCount++;
+        List<EntryKey> entryKeys = entryKeysByKey.remove(key);
+        if (entryKeys == null) {
+            return;
+        }
+        for (EntryKey entryKey : entryKeys) {
+            size -= entries.remove(entryKey).weight;
+        }
+    }
+
+    synchronized void evictAll() {
+        modCount++;
+        entries.clear();
+        entryKeysByKey.clear();
+        size = 0;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized long hitCount() {
+        return hitCount;
+    }
+
+    synchronized long missCount() {
+        return missCount;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<EntryKey, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<EntryKey, Entry> eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.getValue().weight;
+            removeFromIndex(eldest.getKey());
+            stats.recordEviction(eldest.getKey().key, eldest.getValue().weight);
+        }
+    }
+
+    private void remove(EntryKey entryKey) {
+        size -= entries.remove(entryKey).weight;
+        removeFromIndex(entryKey);
+    }
+
+    private void removeFromIndex(EntryKey entryKey) {
+        List<EntryKey> entryKeys = entryKeysByKey.get(entryKey.key);
+        entryKeys.remove(entryKey);
+        if (entryKeys.isEmpty()) {
+            entryKeysByKey.remove(entryKey.key);
+        }
+    }
+
+    private static class EntryKey {
+        private final String key;
+        private final Type type;
+
+        private EntryKey(String key, Type type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey other = (EntryKey) o;
+            return key.equals(other.key) && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + type.hashCode();
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long weight;
+        private final long expiresAt;
+
+        private Entry(Object value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.anupcowkur.reservoir;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for Reservoir. Create one with a {@link ReservoirConfig.Builder}.
+ */
+public class ReservoirConfig {
+
+    final long maxSize;
+
+    final Serializer serializer;
+
+    final long memoryCacheSize;
+
+    final int compressionThreshold;
+
+    final long mappedReadThreshold;
+
+    final long maintenanceInterval;
+
+    final long lowWaterMark;
+
+    final long writeBehindDelay;
+
+    final int writeBehindMaxPending;
+
+    final Executor executor;
+
+    final CacheListener listener;
+
+    private ReservoirConfig(Builder builder) {
+        this.maxSize = builder.maxSize;
+        this.serializer = builder.serializer;
+        this.memoryCacheSize = builder.memoryCacheSize;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.mappedReadThreshold = builder.mappedReadThreshold;
+        this.maintenanceInterval = builder.maintenanceInterval;
+        this.lowWaterMark = builder.lowWaterMark;
+        this.writeBehindDelay = builder.writeBehindDelay;
+        this.writeBehindMaxPending = builder.writeBehindMaxPending;
+        this.executor = builder.executor;
+        this.listener = builder.listener;
+    }
+
+    /**
+     * Builder for {@link ReservoirConfig}.
+     */
+    public static class Builder {
+
+        private final long maxSize;
+
+        private Serializer serializer = new GsonSerializer();
+
+        private long memoryCacheSize = 0;
+
+        private int compressionThreshold = -1;
+
+        private long mappedReadThreshold = -1;
+
+        private long maintenanceInterval = 0;
+
+        private long lowWaterMark = -1;
+
+        private long writeBehindDelay = 0;
+
+        private int writeBehindMaxPending = 0;
+
+        private Executor executor;
+
+        private CacheListener listener;
+
+        /**
+         * @param maxSize the maximum size of the disk cache in bytes.
+         */
+        public Builder(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Sets the serializer that converts objects to and from their stored form. Defaults to
+         * a {@link GsonSerializer}.
+         *
+         * @param serializer the serializer.
+         * @return this builder.
+         */
+        public Builder serializer(Serializer serializer) {
+            if (serializer == null) {
+                throw new NullPointerException("serializer == null");
+            }
+            this.serializer = serializer;
+            return this;
+        }
+
+        /**
+         * Enables an in-memory cache of deserialized objects in front of the disk cache. Reading
+         * the same key again with the same type returns the same instance without touching the
+         * disk, so don't modify objects returned by Reservoir if you enable it. Disabled by
+         * default.
+         *
+         * @param memoryCacheSize the maximum size of the memory cache in bytes, as measured by
+         *                        the serialized size of the objects it holds. 0 disables it.
+         * @return this builder.
+         */
+        public Builder memoryCacheSize(long memoryCacheSize) {
+            this.memoryCacheSize = memoryCacheSize;
+            return this;
+        }
+
+        /**
+         * Enables compression of stored values. Values whose serialized form is larger than the
+         * threshold are deflated before they are written, so more of them fit into the cache.
+         * Smaller values are stored as they are, since compressing them costs more time than it
+         * saves space. Disabled by default.
+         *
+         * @param compressionThreshold the size in bytes above which values are compressed.
+         *                             Values up to this size are buffered in memory while they
+         *                             are written. A negative value disables compression.
+         * @return this builder.
+         */
+        public Builder compressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        /**
+         * Enables memory mapped reads of large values. Values at least this large are read by
+         * mapping their file into memory instead of streaming it onto the heap. A
+         * {@link BufferSerializer}, such as {@link BinarySerializer}, deserializes them straight
+         * from the mapped file, and other serializers read them through a stream over it.
+         * Compressed values are always streamed. Disabled by default.
+         *
+         * @param mappedReadThreshold the size in bytes from which values are mapped. Mapping a
+         *                            file costs more than reading a small one, so this should be
+         *                            in the order of hundreds of kilobytes. A negative value
+         *                            disables memory mapped reads.
+         * @return this builder.
+         */
+        public Builder mappedReadThreshold(long mappedReadThreshold) {
+            this.mappedReadThreshold = mappedReadThreshold;
+            return this;
+        }
+
+        /**
+         * Enables a background thread that periodically maintains the disk cache, the same way
+         * {@link ReservoirStore#runMaintenance()} does: it deletes expired objects and, if a
+         * {@link #lowWaterMark low-water mark} is set, trims the cache down to it. Expired
+         * objects are treated as missing whether or not this is enabled, but without it their
+         * space is only reclaimed once they are overwritten or evicted. Disabled by default.
+         *
+         * @param interval the time between maintenance runs. 0 disables periodic maintenance.
+         * @param unit     the unit of the interval.
+         * @return this builder.
+         */
+        public Builder maintenanceInterval(long interval, TimeUnit unit) {
+            this.maintenanceInterval = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Sets the size that maintenance trims the disk cache down to, by evicting the least
+         * recently used objects. Once the cache reaches its maximum size, the disk cache evicts
+         * objects on its own while puts are going on, which holds up other operations. Trimming
+         * down to a lower size at a time of the app's choosing, for example when it goes idle,
+         * leaves room for the next burst of puts. Disabled by default.
+         *
+         * @param lowWaterMark the size in bytes to trim down to. A negative value disables
+         *                     trimming.
+         * @return this builder.
+         */
+        public Builder lowWaterMark(long lowWaterMark) {
+            this.lowWaterMark = lowWaterMark;
+            return this;
+        }
+
+        /**
+         * Enables write-behind of puts. Objects put into the store are kept in memory and
+         * written to disk in the background after a delay, so that keys that are put many times
+         * in a row, such as a scroll position or a draft, are only written once with their latest
+         * object. Gets are served from the objects waiting to be written, and
+         * {@link ReservoirStore#flush()} writes them right away. Objects that haven't been
+         * written yet are lost if the process dies, and failures to write them are only reported
+         * by {@code flush}. Objects must not be modified after they are put. Disabled by default.
+         *
+         * @param delay      the time objects wait before they are written, must be positive.
+         * @param unit       the unit of the delay.
+         * @param maxPending the number of keys waiting to be written at which they are written
+         *                   without waiting for the delay, must be positive.
+         * @return this builder.
+         */
+        public Builder writeBehind(long delay, TimeUnit unit, int maxPending) {
+            if (delay <= 0) {
+                throw new IllegalArgumentException("delay must be positive but was " + delay);
+            }
+            if (maxPending <= 0) {
+                throw new IllegalArgumentException("maxPending must be positive but was "
+                        + maxPending);
+            }
+            this.writeBehindDelay = Math.max(1, unit.toMillis(delay));
+            this.writeBehindMaxPending = maxPending;
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs the async and Observable operations. Operations on the same
+         * key still run one at a time in the order they were started. By default Reservoir uses
+         * its own small thread pools, one for reads and one for writes, so that reads don't wait
+         * behind large writes.
+         *
+         * @param executor the executor.
+         * @return this builder.
+         */
+        public Builder executor(Executor executor) {
+            if (executor == null) {
+                throw new NullPointerException("executor == null");
+            }
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets a listener that receives an event for every get, put, delete, eviction and clear
+         * of the store. The store's statistics are collected whether or not a listener is set.
+         *
+         * @param listener the listener.
+         * @return this builder.
+         */
+        public Builder listener(CacheListener listener) {
+            if (listener == null) {
+                throw new NullPointerException("listener == null");
+            }
+            this.listener = listener;
+            return this;
+        }
+
+        public ReservoirConfig build() {
+            return new ReservoirConfig(this);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.anupcowkur.reservoir;
+
+/**
+ * Loads fresh objects for gets that are backed by a loader, for example from the network.
+ */
+public interface ReservoirLoader<T> {
+
+    /**
+     * Loads the object for the given key. This is called on a background thread, and only once
+     * at a time for the same key and type.
+     *
+     * @param key the key string.
+     * @return the object, which must not be null.
+     * @throws Exception thrown if the object cannot be loaded.
+     */
+    public T load(String key) throws Exception;
+}
@@ -0,0 +1,2474 @@
+package com.anupcowkur.reservoir;
+
+import com.google.gson.internal.$Gson$Types;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.observables.SyncOnSubscribe;
+import rx.schedulers.Schedulers;
+
+/**
+ * A store of objects on disk, with its own directory, maximum size and least recently used
+ * eviction. On Android, named stores are opened with {@code Reservoir.open}, and the static
+ * methods of {@code Reservoir} use the default store. Elsewhere, stores are opened with
+ * {@link #open(File, ReservoirConfig)}. Keeping unrelated data in separate stores stops large
+ * objects of one kind from evicting small but important objects of another.
+ */
+public class ReservoirStore {
+
+    private static final int KEY_LOCK_STRIPES = 64;
+
+    private static final int READ_THREAD_COUNT = 2;
+
+    private static final int WRITE_THREAD_COUNT = 1;
+
+    private static final int LOAD_THREAD_COUNT = 4;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private static Executor readExecutor;
+
+    private static Executor writeExecutor;
+
+    private static Executor loadExecutor;
+
+    /**
+     * Listens to refreshes in the background, whose results are only put into the store.
+     */
+    private static final InFlightLoads.Listener REFRESH_LISTENER = new InFlightLoads.Listener() {
+        @Override
+        public void onLoaded(Object value) {
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+        }
+    };
+
+    private final AtomicReference<CacheGeneration> generation = new AtomicReference<>();
+
+    private final Lock[] keyLocks = new Lock[KEY_LOCK_STRIPES];
+
+    private final File baseDir;
+
+    private final ReservoirConfig config;
+
+    private final MemoryCache memoryCache;
+
+    private final StatsRecorder stats;
+
+    private final KeyedExecutor executor;
+
+    private final Executor callbackExecutor;
+
+    private final Scheduler callbackScheduler;
+
+    private final InFlightLoads inFlightGets = new InFlightLoads();
+
+    private final InFlightLoads inFlightRefreshes = new InFlightLoads();
+
+    private final WriteBehindBuffer writeBehind;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            flushRequested.set(false);
+            try {
+                flush();
+            } catch (Exception ignored) {
+                // Objects that fail to be written are dropped, just like a put that fails.
+            }
+        }
+    };
+
+    private final ScheduledExecutorService maintenanceExecutor;
+
+    private final Runnable maintenanceTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                runMaintenance();
+            } catch (Exception ignored) {
+                // Expired objects are still treated as missing when read and the disk cache
+                // still evicts objects on its own, so a failed run only delays reclaiming space
+                // until the next one.
+            }
+        }
+    };
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the store in the given directory.
+     *
+     * @param baseDir           the directory of the store.
+     * @param config            the configuration.
+     * @param readExecutor      the executor that runs reads if the configuration has none.
+     * @param writeExecutor     the executor that runs writes if the configuration has none.
+     * @param callbackExecutor  the executor that delivers the results of async operations.
+     * @param callbackScheduler the scheduler that Observables are observed on.
+     * @throws IOException thrown if the store cannot be opened.
+     */
+    ReservoirStore(File baseDir, ReservoirConfig config, Executor readExecutor,
+                   Executor writeExecutor, Executor callbackExecutor, Scheduler callbackScheduler)
+            throws IOException {
+        for (int i = 0; i < KEY_LOCK_STRIPES; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+        this.baseDir = baseDir;
+        this.config = config;
+        this.stats = new StatsRecorder(config.listener);
+        this.memoryCache = config.memoryCacheSize > 0
+                ? new MemoryCache(config.memoryCacheSize, stats) : null;
+        this.executor = config.executor != null
+                ? new KeyedExecutor(config.executor, config.executor)
+                : new KeyedExecutor(readExecutor, writeExecutor);
+        this.callbackExecutor = callbackExecutor;
+        this.callbackScheduler = callbackScheduler;
+        this.writeBehind = config.writeBehindDelay > 0 ? new WriteBehindBuffer() : null;
+        generation.set(CacheGeneration.openLatest(baseDir, config));
+        this.maintenanceExecutor = startMaintenance(config.maintenanceInterval);
+    }
+
+    /**
+     * Opens a store in the given directory, for use outside of Android. Async operations run on
+     * background threads shared by the stores opened this way, unless the configuration has an
+     * executor, and callbacks and Observables are notified on those threads. A directory must
+     * not be used by more than one open store at a time.
+     *
+     * @param directory the directory of the store. It is created if it doesn't exist.
+     * @param config    the configuration.
+     * @return the store, which should be closed when it is no longer needed.
+     * @throws IOException thrown if the store cannot be opened.
+     */
+    public static synchronized ReservoirStore open(File directory, ReservoirConfig config)
+            throws IOException {
+        if (readExecutor == null) {
+            readExecutor = newThreadPool("Reservoir read", READ_THREAD_COUNT);
+            writeExecutor = newThreadPool("Reservoir write", WRITE_THREAD_COUNT);
+        }
+        return new ReservoirStore(directory, config, readExecutor, writeExecutor,
+                DIRECT_EXECUTOR, Schedulers.immediate());
+    }
+
+    /**
+     * Creates a pool of daemon threads for the background work of stores that have no executor
+     * configured. Idle threads are stopped.
+     */
+    static Executor newThreadPool(String name, int threadCount) {
+        return newThreadPool(name, threadCount, null);
+    }
+
+    /**
+     * Creates a pool of daemon threads for the background work of stores that have no executor
+     * configured. Idle threads are stopped.
+     *
+     * @param threadSetup run on each thread before it takes any work, for example to lower its
+     *                    priority, or null.
+     */
+    static Executor newThreadPool(final String name, final int threadCount,
+                                  final Runnable threadSetup) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                Runnable work = runnable;
+                if (threadSetup != null) {
+                    work = new Runnable() {
+                        @Override
+                        public void run() {
+                            threadSetup.run();
+                            runnable.run();
+                        }
+                    };
+                }
+                Thread thread = new Thread(work, name + " #" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Closes the store. Operations that are in progress finish first. Starting operations after
+     * this throws an IllegalStateException.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        if (writeBehind != null) {
+            try {
+                flush();
+            } catch (IOException | RuntimeException ignored) {
+                // Call flush before closing to find out about failures.
+            }
+        }
+        closed = true;
+        maintenanceExecutor.shutdownNow();
+        generation.get().retire(false);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void execute(String key, boolean write, Runnable task) {
+        execute(Collections.singleton(key), write, task);
+    }
+
+    /**
+     * Submits background work for the given keys. Gets of the keys that are in progress when a
+     * write is submitted can't be joined by later gets, since they may not see the write.
+     */
+    private void execute(Collection<String> keys, boolean write, Runnable task) {
+        if (write) {
+            for (String key : keys) {
+                inFlightGets.forget(key);
+            }
+        }
+        executor.execute(keys, write, task);
+    }
+
+    private void executeBarrier(Runnable task) {
+        inFlightGets.forgetAll();
+        executor.executeBarrier(task);
+    }
+
+    /**
+     * Returns the scheduler that Observables touching the given keys subscribe on. Work on the
+     * same key is run in the order it was subscribed.
+     */
+    private Scheduler scheduler(String key, boolean write) {
+        return scheduler(Collections.singleton(key), write);
+    }
+
+    private Scheduler scheduler(final Collection<String> keys, final boolean write) {
+        return Schedulers.from(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                ReservoirStore.this.execute(keys, write, runnable);
+            }
+        });
+    }
+
+    private Scheduler barrierScheduler() {
+        return Schedulers.from(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                executeBarrier(runnable);
+            }
+        });
+    }
+
+    /**
+     * Creates the executor that runs maintenance in the background, and schedules periodic
+     * maintenance if it is enabled. Its thread is only started when there is work for it, and
+     * stopped again when it has been idle for a while.
+     *
+     * @param interval the time between maintenance runs in milliseconds, or 0 to only run
+     *                 maintenance on request.
+     * @return the executor.
+     */
+    private ScheduledExecutorService startMaintenance(final long interval) {
+        ScheduledThreadPoolExecutor maintenance = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Reservoir maintenance");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        maintenance.setKeepAliveTime(30, TimeUnit.SECONDS);
+        maintenance.allowCoreThreadTimeOut(true);
+        if (interval > 0) {
+            maintenance.scheduleWithFixedDelay(maintenanceTask, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+        return maintenance;
+    }
+
+    /**
+     * Returns the executor that runs loaders: the executor of the configuration if it has one,
+     * or else background threads shared by all stores. Loaders don't run on the threads of
+     * reads and writes, so slow loads never hold them up.
+     */
+    private Executor loadExecutor() {
+        if (config.executor != null) {
+            return config.executor;
+        }
+        synchronized (ReservoirStore.class) {
+            if (loadExecutor == null) {
+                loadExecutor = newThreadPool("Reservoir load", LOAD_THREAD_COUNT);
+            }
+            return loadExecutor;
+        }
+    }
+
+    /**
+     * Converts a maximum age into milliseconds.
+     *
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     */
+    private static long maxAgeMillis(final long maxAge, final TimeUnit unit) {
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("maxAge must not be negative but was " + maxAge);
+        }
+        return unit.toMillis(maxAge);
+    }
+
+    /**
+     * Converts a time to live into the time at which an object put now expires.
+     *
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     */
+    private static long expiresAt(final long ttl, final TimeUnit unit) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive but was " + ttl);
+        }
+        return System.currentTimeMillis() + unit.toMillis(ttl);
+    }
+
+    /**
+     * Acquires the current generation of the disk cache. The caller must release it when it is
+     * done with it. Reads only acquire the generation and never wait for writes or clears.
+     */
+    private CacheGeneration acquireGeneration() {
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("The store has been closed.");
+            }
+            CacheGeneration current = generation.get();
+            if (current.acquire()) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Returns the lock that puts and deletes of the given key hold, so that only one of them
+     * writes the key at a time. Keys are spread over a fixed number of locks.
+     */
+    private Lock lockFor(final String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return keyLocks[hash & (KEY_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Check if an object with the given key exists in the store.
+     *
+     * @param key the key string.
+     * @return true if object with given key exists.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public boolean contains(final String key) throws IOException {
+        WriteBehindBuffer.Pending pending = writeBehind != null ? writeBehind.get(key) : null;
+        if (pending != null) {
+            return !pending.isExpired(System.currentTimeMillis());
+        }
+        CacheGeneration current = acquireGeneration();
+        try {
+            return current.cache.contains(key);
+        } finally {
+            current.release();
+        }
+    }
+
+    /**
+     * Returns the size and timestamps of the object with the given key. This is answered from
+     * an index the store keeps in memory, without reading the object or counting it as used.
+     *
+     * @param key the key string.
+     * @return the size and timestamps of the object, or null if there is none or it has expired.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if the object was waiting to be written with
+     *                               write-behind, and writing it failed.
+     */
+    public EntryStat stat(final String key) throws IOException {
+        flush(key);
+        return indexedStat(key);
+    }
+
+    private EntryStat indexedStat(final String key) {
+        CacheGeneration current = acquireGeneration();
+        try {
+            return current.cache.stat(key);
+        } finally {
+            current.release();
+        }
+    }
+
+    /**
+     * Put an object into the store with the given key. This a blocking IO operation. Previously
+     * stored object with the same
+     * key (if any) will be overwritten.
+     *
+     * @param key    the key string.
+     * @param object the object to be stored.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void put(final String key, final Object object) throws IOException {
+        put(key, object, 0);
+    }
+
+    /**
+     * Put an object into the store with the given key that expires after the given time to live.
+     * This a blocking IO operation. Previously stored object with the same key (if any) will be
+     * overwritten. Once the object has expired, the store behaves as if it wasn't there.
+     *
+     * @param key    the key string.
+     * @param object the object to be stored.
+     * @param ttl    the time to live, must be positive.
+     * @param unit   the unit of the time to live.
+     * @throws IllegalStateException    thrown if the store has been closed.
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     * @throws IOException              thrown if cache cannot be accessed.
+     */
+    public void put(final String key, final Object object, final long ttl,
+                           final TimeUnit unit) throws IOException {
+        put(key, object, expiresAt(ttl, unit));
+    }
+
+    private void put(final String key, final Object object, final long expiresAt)
+            throws IOException {
+        if (writeBehind != null) {
+            putBehind(key, object, expiresAt);
+            return;
+        }
+        final SerializingWriter writer = new SerializingWriter(object);
+        long nanos = write(key, new DiskWrite() {
+            @Override
+            public void writeTo(SimpleDiskCache cache) throws IOException {
+                cache.put(key, writer, expiresAt);
+            }
+        });
+        stats.recordPut(key, writer.bytes, nanos - writer.serializerNanos, writer.serializerNanos);
+    }
+
+    /**
+     * Buffers an object for write-behind, and makes sure that a flush is coming up. The object
+     * is serialized right away, so changes the caller makes to it afterwards neither end up on
+     * disk nor are seen by gets.
+     */
+    private void putBehind(final String key, final Object object, final long expiresAt)
+            throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The store has been closed.");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        config.serializer.serialize(object, out);
+        long serializerNanos = System.nanoTime() - start;
+        inFlightGets.forget(key);
+        int pending = writeBehind.put(key, new WriteBehindBuffer.Pending(out.toByteArray(),
+                object != null ? object.getClass() : null, expiresAt, serializerNanos));
+        if (memoryCache != null) {
+            memoryCache.remove(key);
+        }
+        try {
+            if (pending >= config.writeBehindMaxPending) {
+                if (flushRequested.compareAndSet(false, true)) {
+                    maintenanceExecutor.execute(flushTask);
+                }
+            } else if (flushScheduled.compareAndSet(false, true)) {
+                maintenanceExecutor.schedule(flushTask, config.writeBehindDelay,
+                        TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("The store has been closed.");
+        }
+    }
+
+    /**
+     * Writes the objects that are waiting to be written with write-behind to disk. This a
+     * blocking IO operation. Objects that fail to be written are dropped, and the first failure
+     * is thrown once the others have been written. Does nothing if write-behind isn't enabled.
+     *
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if an object cannot be written.
+     */
+    public void flush() throws IOException {
+        if (writeBehind == null || writeBehind.isEmpty()) {
+            return;
+        }
+        IOException failure = null;
+        for (Map.Entry<String, WriteBehindBuffer.Pending> entry
+                : writeBehind.snapshot().entrySet()) {
+            try {
+                write(entry.getKey(), entry.getValue());
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes the object of the given key to disk if it is waiting to be written with
+     * write-behind, for the operations that read the disk cache directly.
+     */
+    private void flush(final String key) throws IOException {
+        WriteBehindBuffer.Pending pending = writeBehind != null ? writeBehind.get(key) : null;
+        if (pending != null) {
+            write(key, pending);
+        }
+    }
+
+    /**
+     * Drops the object of the given key that is waiting to be written with write-behind, before
+     * the key is overwritten or deleted.
+     */
+    private void dropPending(final String key) {
+        if (writeBehind != null) {
+            writeBehind.remove(key);
+        }
+    }
+
+    /**
+     * Writes an object that was waiting to be written with write-behind, unless it has been
+     * replaced or dropped since.
+     */
+    private void write(final String key, final WriteBehindBuffer.Pending pending)
+            throws IOException {
+        final boolean[] written = new boolean[1];
+        try {
+            long nanos = write(key, new DiskWrite() {
+                @Override
+                public void writeTo(SimpleDiskCache cache) throws IOException {
+                    if (writeBehind.get(key) == pending) {
+                        cache.put(key, pending.value, pending.expiresAt);
+                        writeBehind.remove(key, pending);
+                        written[0] = true;
+                    }
+                }
+            });
+            if (written[0]) {
+                stats.recordPut(key, pending.value.length, nanos, pending.serializerNanos);
+            }
+        } finally {
+            writeBehind.remove(key, pending);
+        }
+    }
+
+    /**
+     * Writes the given key to the current generation of the disk cache while holding the key's
+     * lock, and drops the objects the memory cache holds for it.
+     *
+     * @return the time the write took in nanoseconds.
+     */
+    private long write(final String key, final DiskWrite write) throws IOException {
+        inFlightGets.forget(key);
+        CacheGeneration current = acquireGeneration();
+        Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            write.writeTo(current.cache);
+            return System.nanoTime() - start;
+        } finally {
+            if (memoryCache != null) {
+                memoryCache.remove(key);
+            }
+            current.release();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put several objects into the store in one go. This a blocking IO operation. Previously
+     * stored objects with the same keys (if any) will be overwritten. The objects are written
+     * in iteration order and the operation stops at the first failure, leaving the objects
+     * written before it in place.
+     *
+     * @param objects the objects to be stored, mapped by their key strings.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void putAll(final Map<String, ?> objects) throws IOException {
+        for (Map.Entry<String, ?> entry : objects.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Put several objects into the store asynchronously. All of them are written in a single
+     * background operation. Previously stored objects with the same keys (if any) will be
+     * overwritten.
+     *
+     * @param objects  the objects to be stored, mapped by their key strings.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void putAllAsync(final Map<String, ?> objects,
+                                   final ReservoirPutCallback callback) {
+        execute(objects.keySet(), true, new PutTask(objects, callback));
+    }
+
+    /**
+     * Put several objects into the store asynchronously. All of them are written in a single
+     * background operation. Previously stored objects with the same keys (if any) will be
+     * overwritten.
+     *
+     * @param objects the objects to be stored, mapped by their key strings.
+     * @return an {@link Observable} that will insert the objects into the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> putAllUsingObservable(final Map<String, ?> objects) {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.putAll(objects);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(objects.keySet(), true)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Put an object into the store with the given key asynchronously. Previously
+     * stored object with the same
+     * key (if any) will be overwritten.
+     *
+     * @param key      the key string.
+     * @param object   the object to be stored.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void putAsync(final String key, final Object object,
+                                final ReservoirPutCallback callback) {
+        execute(key, true, new PutTask(Collections.singletonMap(key, object), callback));
+    }
+
+    /**
+     * Put an object into the store with the given key asynchronously. The object expires after
+     * the given time to live. Previously stored object with the same key (if any) will be
+     * overwritten.
+     *
+     * @param key      the key string.
+     * @param object   the object to be stored.
+     * @param ttl      the time to live, must be positive.
+     * @param unit     the unit of the time to live.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException    thrown if the store has been closed.
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     */
+    public void putAsync(final String key, final Object object, final long ttl,
+                                final TimeUnit unit, final ReservoirPutCallback callback) {
+        execute(key, true,
+                new PutTask(Collections.singletonMap(key, object), expiresAt(ttl, unit), callback));
+    }
+
+    /**
+     * Put an object into the store with the given key asynchronously. Previously
+     * stored object with the same
+     * key (if any) will be overwritten.
+     *
+     * @param key    the key string.
+     * @param object the object to be stored.
+     * @return an {@link Observable} that will insert the object into the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> putUsingObservable(final String key, final Object object) {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.put(key, object);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(key, true)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Put an object into the store with the given key asynchronously. The object expires after
+     * the given time to live. Previously stored object with the same key (if any) will be
+     * overwritten.
+     *
+     * @param key    the key string.
+     * @param object the object to be stored.
+     * @param ttl    the time to live, must be positive.
+     * @param unit   the unit of the time to live.
+     * @return an {@link Observable} that will insert the object into the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException    thrown if the store has been closed.
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     */
+    public Observable<Boolean> putUsingObservable(final String key, final Object object,
+                                                         final long ttl, final TimeUnit unit) {
+        final long expiresAt = expiresAt(ttl, unit);
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.put(key, object, expiresAt);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(key, true)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Put raw bytes into the store with the given key, without serializing them. This a blocking
+     * IO operation. Previously stored object with the same key (if any) will be overwritten.
+     * Bytes put this way can only be read back with {@link #getBytes} or
+     * {@link #openInputStream}.
+     *
+     * @param key   the key string.
+     * @param bytes the bytes to be stored.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void putBytes(final String key, final byte[] bytes) throws IOException {
+        dropPending(key);
+        long nanos = write(key, new DiskWrite() {
+            @Override
+            public void writeTo(SimpleDiskCache cache) throws IOException {
+                cache.put(key, bytes, 0);
+            }
+        });
+        stats.recordPut(key, bytes.length, nanos, 0);
+    }
+
+    /**
+     * Put raw bytes into the store with the given key asynchronously.
+     *
+     * @param key      the key string.
+     * @param bytes    the bytes to be stored.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void putBytesAsync(final String key, final byte[] bytes,
+                              final ReservoirPutCallback callback) {
+        execute(key, true, new PutBytesTask(key, bytes, callback));
+    }
+
+    /**
+     * Put raw bytes into the store with the given key asynchronously.
+     *
+     * @param key   the key string.
+     * @param bytes the bytes to be stored.
+     * @return an {@link Observable} that will insert the bytes into the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> putBytesUsingObservable(final String key, final byte[] bytes) {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.putBytes(key, bytes);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(key, true)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Put the contents of a stream into the store with the given key, without serializing them
+     * and without holding them in memory as a whole. This a blocking IO operation. Previously
+     * stored object with the same key (if any) will be overwritten. Contents put this way can
+     * only be read back with {@link #getBytes} or {@link #openInputStream}.
+     *
+     * @param key the key string.
+     * @param in  the stream to store, which is read up to its end but not closed.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed or the stream cannot be
+     *                               read.
+     */
+    public void putStream(final String key, final InputStream in) throws IOException {
+        dropPending(key);
+        final long[] bytes = new long[1];
+        long nanos = write(key, new DiskWrite() {
+            @Override
+            public void writeTo(SimpleDiskCache cache) throws IOException {
+                bytes[0] = cache.put(key, in, 0);
+            }
+        });
+        stats.recordPut(key, bytes[0], nanos, 0);
+    }
+
+    /**
+     * Get the raw bytes stored with the given key. This a blocking IO operation.
+     *
+     * @param key the key string.
+     * @return the bytes if they exist.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws NullPointerException  thrown if nothing is stored with the given key.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public byte[] getBytes(final String key) throws IOException {
+        flush(key);
+        long start = System.nanoTime();
+        CacheGeneration current = acquireGeneration();
+        byte[] bytes;
+        try {
+            bytes = current.cache.getBytes(key);
+        } finally {
+            current.release();
+        }
+        if (bytes == null) {
+            stats.recordMiss(key, System.nanoTime() - start);
+            throw new NullPointerException();
+        }
+        stats.recordDiskHit(key, bytes.length, System.nanoTime() - start, 0);
+        return bytes;
+    }
+
+    /**
+     * Get the raw bytes stored with the given key asynchronously.
+     *
+     * @param key      the key string.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void getBytesAsync(final String key, final ReservoirGetCallback<byte[]> callback) {
+        execute(key, false, new GetBytesTask(key, callback));
+    }
+
+    /**
+     * Get the raw bytes stored with the given key asynchronously.
+     *
+     * @param key the key string.
+     * @return an {@link Observable} that will fetch the bytes from the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<byte[]> getBytesUsingObservable(final String key) {
+        return Observable.create(new Observable.OnSubscribe<byte[]>() {
+            @Override
+            public void call(Subscriber<? super byte[]> subscriber) {
+                try {
+                    byte[] bytes = ReservoirStore.this.getBytes(key);
+                    subscriber.onNext(bytes);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(key, false)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Open a stream of the raw bytes stored with the given key, to read them without holding
+     * them in memory as a whole. The stream reads the value as it was when it was opened, even
+     * if the key is overwritten or the store is cleared in the meantime. This a blocking IO
+     * operation.
+     *
+     * @param key the key string.
+     * @return the stream, which must be closed.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws NullPointerException  thrown if nothing is stored with the given key.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public InputStream openInputStream(final String key) throws IOException {
+        flush(key);
+        long start = System.nanoTime();
+        final CacheGeneration current = acquireGeneration();
+        SimpleDiskCache.EntryInputStream in;
+        try {
+            in = current.cache.getInputStream(key);
+        } catch (IOException | RuntimeException e) {
+            current.release();
+            throw e;
+        }
+        if (in == null) {
+            current.release();
+            stats.recordMiss(key, System.nanoTime() - start);
+            throw new NullPointerException();
+        }
+        stats.recordDiskHit(key, in.getLength(), System.nanoTime() - start, 0);
+        return new FilterInputStream(in) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    current.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Get an object from the store with the given key. This a blocking IO operation.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param classOfT the class type of the expected return object.
+     * @return the object of the given type if it exists.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public <T> T get(final String key, final Class<T> classOfT) throws IOException {
+        return get(key, (Type) classOfT);
+    }
+
+    /**
+     * Get an object from the store with the given key. This a blocking IO operation.
+     *
+     * @param <T>     the type of the object to get.
+     * @param key     the key string.
+     * @param typeOfT the type of the expected return object.
+     * @return the object of the given type if it exists.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public <T> T get(final String key, final Type typeOfT) throws IOException {
+        T value = getIfPresent(key, typeOfT);
+        if (value == null)
+            throw new NullPointerException();
+        return value;
+    }
+
+    /**
+     * Get an object from the memory cache or the disk cache.
+     *
+     * @param key     the key string.
+     * @param typeOfT the type of the expected return object.
+     * @return the object of the given type, or null if it doesn't exist.
+     * @throws IOException thrown if cache cannot be accessed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T getIfPresent(final String key, final Type typeOfT) throws IOException {
+        WriteBehindBuffer.Pending pending = writeBehind != null ? writeBehind.get(key) : null;
+        if (pending != null) {
+            if (pending.isExpired(System.currentTimeMillis())) {
+                stats.recordMiss(key, 0);
+                return null;
+            }
+            if (typeOfT.equals(pending.type)) {
+                T value = config.serializer.deserialize(new ByteArrayInputStream(pending.value),
+                        typeOfT);
+                if (value == null) {
+                    stats.recordMiss(key, 0);
+                    return null;
+                }
+                stats.recordMemoryHit(key);
+                return value;
+            }
+            write(key, pending);
+        }
+        if (memoryCache != null) {
+            T value = (T) memoryCache.get(key, typeOfT);
+            if (value != null) {
+                stats.recordMemoryHit(key);
+                return value;
+            }
+        }
+        long modCount = memoryCache != null ? memoryCache.modCount() : 0;
+        long start = System.nanoTime();
+        long serializerNanos;
+        long bytes;
+        CacheGeneration current = acquireGeneration();
+        SimpleDiskCache.EntryInputStream in;
+        T value;
+        try {
+            in = current.cache.getInputStream(key);
+            if (in == null) {
+                stats.recordMiss(key, System.nanoTime() - start);
+                return null;
+            }
+            try {
+                ByteBuffer mapped = config.mappedReadThreshold >= 0
+                        && in.getLength() >= config.mappedReadThreshold ? in.map() : null;
+                if (mapped != null) {
+                    bytes = mapped.remaining();
+                    long deserializeStart = System.nanoTime();
+                    value = deserialize(mapped, typeOfT);
+                    serializerNanos = System.nanoTime() - deserializeStart;
+                } else {
+                    StatsRecorder.TimedInputStream timed = new StatsRecorder.TimedInputStream(in);
+                    long deserializeStart = System.nanoTime();
+                    value = config.serializer.deserialize(timed, typeOfT);
+                    serializerNanos = System.nanoTime() - deserializeStart - timed.nanos;
+                    bytes = timed.bytes;
+                }
+            } finally {
+                in.close();
+            }
+        } finally {
+            current.release();
+        }
+        long ioNanos = System.nanoTime() - start - serializerNanos;
+        if (value == null) {
+            stats.recordMiss(key, ioNanos);
+            return null;
+        }
+        stats.recordDiskHit(key, bytes, ioNanos, serializerNanos);
+        if (memoryCache != null) {
+            memoryCache.put(key, typeOfT, value, in.getLength(), in.getExpiresAt(), modCount);
+        }
+        return value;
+    }
+
+    /**
+     * Deserializes an object from a memory mapped value. Page faults while reading the mapping
+     * count as time spent in the serializer.
+     */
+    private <T> T deserialize(ByteBuffer mapped, Type typeOfT) throws IOException {
+        if (config.serializer instanceof BufferSerializer) {
+            return ((BufferSerializer) config.serializer).deserialize(mapped, typeOfT);
+        }
+        return config.serializer.deserialize(new ByteBufferInputStream(mapped), typeOfT);
+    }
+
+    /**
+     * Get an object from the store with the given key asynchronously.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param classOfT the class type of the expected return object.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public <T> void getAsync(final String key, final Class<T> classOfT,
+                                    final ReservoirGetCallback<T> callback) {
+        getAsync(key, (Type) classOfT, callback);
+    }
+
+    /**
+     * Get an object from the store with the given key asynchronously.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param typeOfT  the type of the expected return object.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public <T> void getAsync(final String key, final Type typeOfT,
+                                    final ReservoirGetCallback<T> callback) {
+        InFlightLoads.Load load = inFlightGets.join(key, typeOfT, new CallbackListener<>(callback));
+        if (load != null) {
+            startGet(load, key, typeOfT);
+        }
+    }
+
+    /**
+     * Get an object from the store with the given key asynchronously.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param classOfT the class type of the expected return object.
+     * @return an {@link Observable} that will fetch the object from the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public <T> Observable<T> getUsingObservable(final String key, final Class<T> classOfT) {
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                InFlightLoads.Load load = inFlightGets.join(key, classOfT,
+                        new InFlightLoads.Listener() {
+                            @Override
+                            @SuppressWarnings("unchecked")
+                            public void onLoaded(Object value) {
+                                subscriber.onNext((T) value);
+                                subscriber.onCompleted();
+                            }
+
+                            @Override
+                            public void onFailed(Exception e) {
+                                subscriber.onError(e);
+                            }
+                        });
+                if (load != null) {
+                    startGet(load, key, classOfT);
+                }
+            }
+        }).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Starts a get in the background whose result is delivered to the listeners of the given
+     * load. Concurrent async and Observable gets of the same key and type share one load.
+     */
+    private void startGet(InFlightLoads.Load load, String key, Type typeOfT) {
+        try {
+            execute(key, false, new GetTask(load, key, typeOfT));
+        } catch (RuntimeException e) {
+            load.fail(e);
+        }
+    }
+
+    /**
+     * Get an object from the store with the given key, or load it with the given loader if it
+     * doesn't exist. Objects older than the given maximum age are still returned right away and
+     * refreshed in the background. Loaded objects are put into the store, unless the key is
+     * written or the store is cleared while they load. Concurrent loads of the same key and type
+     * share one call to a loader. This a blocking operation when the object has to be loaded.
+     *
+     * @param <T>     the type of the object to get.
+     * @param key     the key string.
+     * @param typeOfT the type of the expected return object.
+     * @param loader  the loader of missing and stale objects.
+     * @param maxAge  the age after which an object is refreshed, must not be negative.
+     * @param unit    the unit of the maximum age.
+     * @return the stored object if it exists, or else the loaded object.
+     * @throws IllegalStateException    thrown if the store has been closed.
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     * @throws IOException              thrown if cache cannot be accessed or the loader fails.
+     */
+    public <T> T get(final String key, final Type typeOfT, final ReservoirLoader<T> loader,
+                     final long maxAge, final TimeUnit unit) throws IOException {
+        long maxAgeMillis = maxAgeMillis(maxAge, unit);
+        T value = getIfPresent(key, typeOfT);
+        if (value != null) {
+            refreshIfStale(key, typeOfT, loader, maxAgeMillis);
+            return value;
+        }
+        BlockingListener listener = new BlockingListener();
+        startRefresh(key, typeOfT, loader, listener);
+        return listener.await();
+    }
+
+    /**
+     * Get an object from the store with the given key asynchronously, or load it with the given
+     * loader if it doesn't exist. Objects older than the given maximum age are still returned
+     * right away and refreshed in the background, see
+     * {@link #get(String, Type, ReservoirLoader, long, TimeUnit)}.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param typeOfT  the type of the expected return object.
+     * @param loader   the loader of missing and stale objects.
+     * @param maxAge   the age after which an object is refreshed, must not be negative.
+     * @param unit     the unit of the maximum age.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException    thrown if the store has been closed.
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     */
+    public <T> void getAsync(final String key, final Type typeOfT, final ReservoirLoader<T> loader,
+                             final long maxAge, final TimeUnit unit,
+                             final ReservoirGetCallback<T> callback) {
+        getOrLoad(key, typeOfT, loader, maxAgeMillis(maxAge, unit),
+                new CallbackListener<>(callback));
+    }
+
+    /**
+     * Get an object from the store with the given key asynchronously, or load it with the given
+     * loader if it doesn't exist. Objects older than the given maximum age are still returned
+     * right away and refreshed in the background, see
+     * {@link #get(String, Type, ReservoirLoader, long, TimeUnit)}.
+     *
+     * @param <T>     the type of the object to get.
+     * @param key     the key string.
+     * @param typeOfT the type of the expected return object.
+     * @param loader  the loader of missing and stale objects.
+     * @param maxAge  the age after which an object is refreshed, must not be negative.
+     * @param unit    the unit of the maximum age.
+     * @return an {@link Observable} that will fetch the object from the store or the loader. By
+     * default, this will be scheduled on a background thread and will be observed on the main
+     * thread.
+     * @throws IllegalStateException    thrown if the store has been closed.
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     */
+    public <T> Observable<T> getUsingObservable(final String key, final Type typeOfT,
+                                                final ReservoirLoader<T> loader,
+                                                final long maxAge, final TimeUnit unit) {
+        final long maxAgeMillis = maxAgeMillis(maxAge, unit);
+        return Observable.create(new Observable.OnSubscribe<T>() {
+            @Override
+            public void call(final Subscriber<? super T> subscriber) {
+                getOrLoad(key, typeOfT, loader, maxAgeMillis, new InFlightLoads.Listener() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public void onLoaded(Object value) {
+                        subscriber.onNext((T) value);
+                        subscriber.onCompleted();
+                    }
+
+                    @Override
+                    public void onFailed(Exception e) {
+                        subscriber.onError(e);
+                    }
+                });
+            }
+        }).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Starts a get in the background that hands a missing object over to a load, and refreshes
+     * a stale one.
+     */
+    private <T> void getOrLoad(String key, Type typeOfT, ReservoirLoader<T> loader,
+                               long maxAgeMillis, InFlightLoads.Listener listener) {
+        try {
+            execute(key, false, new GetOrLoadTask<>(key, typeOfT, loader, maxAgeMillis, listener));
+        } catch (RuntimeException e) {
+            listener.onFailed(e);
+        }
+    }
+
+    /**
+     * Starts a refresh of the given key in the background if the object stored with it is older
+     * than the given maximum age. Its age is looked up in the index, so this doesn't read it.
+     */
+    private <T> void refreshIfStale(String key, Type typeOfT, ReservoirLoader<T> loader,
+                                    long maxAgeMillis) {
+        if (writeBehind != null && writeBehind.get(key) != null) {
+            return;
+        }
+        EntryStat stat = indexedStat(key);
+        if (stat == null || System.currentTimeMillis() - stat.lastModified() >= maxAgeMillis) {
+            startRefresh(key, typeOfT, loader, REFRESH_LISTENER);
+        }
+    }
+
+    /**
+     * Adds a listener to the refresh of the given key and type that is in progress, or starts a
+     * new refresh if there is none.
+     */
+    private <T> void startRefresh(String key, Type typeOfT, ReservoirLoader<T> loader,
+                                  InFlightLoads.Listener listener) {
+        InFlightLoads.Load load = inFlightRefreshes.join(key, typeOfT, listener);
+        if (load != null) {
+            try {
+                loadExecutor().execute(new RefreshTask<>(load, key, loader));
+            } catch (RuntimeException e) {
+                load.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Puts a loaded object into the store, unless the object stored with the key has changed
+     * since the load started, or the store has been cleared since.
+     *
+     * @param started  the generation that was current when the load started.
+     * @param expected the stat of the object stored in that generation when the load started,
+     *                 or null if there was none.
+     */
+    private void putIfUnchanged(final String key, final Object object,
+                                final CacheGeneration started, final EntryStat expected)
+            throws IOException {
+        final SerializingWriter writer = new SerializingWriter(object);
+        final boolean[] written = new boolean[1];
+        long nanos = write(key, new DiskWrite() {
+            @Override
+            public void writeTo(SimpleDiskCache cache) throws IOException {
+                if (cache == started.cache && cache.stat(key) == expected
+                        && (writeBehind == null || writeBehind.get(key) == null)) {
+                    cache.put(key, writer, 0);
+                    written[0] = true;
+                }
+            }
+        });
+        if (written[0]) {
+            stats.recordPut(key, writer.bytes, nanos - writer.serializerNanos,
+                    writer.serializerNanos);
+        }
+    }
+
+    /**
+     * Get the elements of a collection from the store with the given key asynchronously. When
+     * using a {@link GsonSerializer}, elements are parsed one at a time as they are requested, so
+     * the first elements are emitted before the rest of the collection has been read and the
+     * collection is never held in memory as a whole.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param classOfT the class type of the expected return object.
+     * @param typeOfT  the type of the collection object which contains objects of type {@code classOfT}.
+     * @return an {@link Observable} that will fetch the object from the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public <T> Observable<T> getUsingObservable(final String key, final Class<T> classOfT, final Type typeOfT) {
+        return Observable.create(new CollectionOnSubscribe<>(this, key, classOfT, typeOfT))
+                .subscribeOn(scheduler(key, false)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Get several objects of the same type from the store in one go. This a blocking IO
+     * operation.
+     *
+     * @param <T>     the type of the objects to get.
+     * @param keys    the key strings.
+     * @param typeOfT the type of the expected return objects.
+     * @return the objects that exist, mapped by their key strings. Keys that don't exist in
+     * the store are left out.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public <T> Map<String, T> getAll(final Collection<String> keys, final Type typeOfT)
+            throws IOException {
+        Map<String, T> objects = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = getIfPresent(key, typeOfT);
+            if (value != null) {
+                objects.put(key, value);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Get several objects of the same type from the store asynchronously. All of them are read
+     * in a single background operation.
+     *
+     * @param <T>      the type of the objects to get.
+     * @param keys     the key strings.
+     * @param typeOfT  the type of the expected return objects.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion with the objects that exist, mapped by
+     *                 their key strings.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public <T> void getAllAsync(final Collection<String> keys, final Type typeOfT,
+                                       final ReservoirGetCallback<Map<String, T>> callback) {
+        execute(keys, false, new GetAllTask<>(keys, typeOfT, callback));
+    }
+
+    /**
+     * Get several objects of the same type from the store asynchronously. All of them are read
+     * in a single background operation.
+     *
+     * @param <T>     the type of the objects to get.
+     * @param keys    the key strings.
+     * @param typeOfT the type of the expected return objects.
+     * @return an {@link Observable} that will fetch the objects that exist, mapped by their key
+     * strings. By default, this will be scheduled on a background thread and will be observed on
+     * the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public <T> Observable<Map<String, T>> getAllUsingObservable(final Collection<String> keys,
+                                                                       final Type typeOfT) {
+        return Observable.create(new Observable.OnSubscribe<Map<String, T>>() {
+            @Override
+            public void call(Subscriber<? super Map<String, T>> subscriber) {
+                try {
+                    Map<String, T> objects = ReservoirStore.this.getAll(keys, typeOfT);
+                    subscriber.onNext(objects);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(keys, false)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Delete an object from the store with the given key. This a blocking IO operation. Previously
+     * stored object with the same
+     * key (if any) will be deleted.
+     *
+     * @param key the key string.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void delete(final String key) throws IOException {
+        dropPending(key);
+        inFlightGets.forget(key);
+        CacheGeneration current = acquireGeneration();
+        Lock lock = lockFor(key);
+        lock.lock();
+        try {
+            current.cache.delete(key);
+            stats.recordDelete(key);
+        } finally {
+            if (memoryCache != null) {
+                memoryCache.remove(key);
+            }
+            current.release();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete an object into the store with the given key asynchronously. Previously
+     * stored object with the same
+     * key (if any) will be deleted.
+     *
+     * @param key      the key string.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirDeleteCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void deleteAsync(final String key, final ReservoirDeleteCallback callback) {
+        execute(key, true, new DeleteTask(Collections.singleton(key), callback));
+    }
+
+    /**
+     * Delete an object into the store with the given key asynchronously. Previously
+     * stored object with the same
+     * key (if any) will be deleted.
+     *
+     * @param key the key string.
+     * @return an {@link Observable} that will delete the object from the store.By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> deleteUsingObservable(final String key) {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.delete(key);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(key, true)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Delete several objects from the store in one go. This a blocking IO operation.
+     *
+     * @param keys the key strings.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void deleteAll(final Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            delete(key);
+        }
+    }
+
+    /**
+     * Delete several objects from the store asynchronously. All of them are deleted in a
+     * single background operation.
+     *
+     * @param keys     the key strings.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirDeleteCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void deleteAllAsync(final Collection<String> keys,
+                                      final ReservoirDeleteCallback callback) {
+        execute(keys, true, new DeleteTask(keys, callback));
+    }
+
+    /**
+     * Delete several objects from the store asynchronously. All of them are deleted in a
+     * single background operation.
+     *
+     * @param keys the key strings.
+     * @return an {@link Observable} that will delete the objects from the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> deleteAllUsingObservable(final Collection<String> keys) {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.deleteAll(keys);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(scheduler(keys, true)).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Returns the keys of the stored objects that start with the given prefix, for example the
+     * keys of a user's objects if their keys start with the user's id. The keys are listed from
+     * an index the store keeps in memory, without reading the objects. Objects stored by versions
+     * of Reservoir that didn't record their key aren't listed.
+     *
+     * @param prefix the prefix, or an empty string for all keys.
+     * @return the keys, in ascending order.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public List<String> keys(final String prefix) {
+        TreeSet<String> keys;
+        CacheGeneration current = acquireGeneration();
+        try {
+            keys = new TreeSet<>(current.cache.keys(prefix));
+        } finally {
+            current.release();
+        }
+        if (writeBehind != null) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, WriteBehindBuffer.Pending> entry
+                    : writeBehind.snapshot().entrySet()) {
+                if (entry.getKey().startsWith(prefix) && !entry.getValue().isExpired(now)) {
+                    keys.add(entry.getKey());
+                }
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+
+    /**
+     * Delete the objects whose keys start with the given prefix, as listed by {@link #keys}.
+     * This a blocking IO operation. Unlike {@link #clear()}, the objects of other keys stay in
+     * place.
+     *
+     * @param prefix the prefix.
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void deletePrefix(final String prefix) throws IOException {
+        deleteAll(keys(prefix));
+    }
+
+    /**
+     * Delete the objects whose keys start with the given prefix asynchronously. Operations
+     * started after this wait for it to finish, since the keys it deletes aren't known up front.
+     *
+     * @param prefix   the prefix.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirDeleteCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void deletePrefixAsync(final String prefix, final ReservoirDeleteCallback callback) {
+        executeBarrier(new DeletePrefixTask(prefix, callback));
+    }
+
+    /**
+     * Delete the objects whose keys start with the given prefix asynchronously. Operations
+     * started after this wait for it to finish, since the keys it deletes aren't known up front.
+     *
+     * @param prefix the prefix.
+     * @return an {@link Observable} that will delete the objects from the store. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> deletePrefixUsingObservable(final String prefix) {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.deletePrefix(prefix);
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(barrierScheduler()).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Clears the cache. The stored key-value pairs are gone for every operation that starts
+     * after this returns, but their files are deleted from disk in the background, once the
+     * operations that were still reading them have finished. Returning doesn't mean the files
+     * are gone, so the disk space they take is reclaimed a little later.
+     *
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void clear() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.clear();
+        }
+        inFlightGets.forgetAll();
+        CacheGeneration previous = swapGeneration();
+        if (memoryCache != null) {
+            memoryCache.evictAll();
+        }
+        previous.retire(true);
+        stats.recordClear();
+    }
+
+    /**
+     * Replaces the current generation of the disk cache with a new, empty one. Operations that
+     * started before keep using the previous generation until they are done.
+     *
+     * @return the previous generation, which the caller must retire.
+     */
+    private synchronized CacheGeneration swapGeneration() throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The store has been closed.");
+        }
+        CacheGeneration previous = generation.get();
+        generation.set(previous.next(baseDir, config));
+        return previous;
+    }
+
+    /**
+     * Clears the cache asynchronously. See {@link #clear()} for when the disk space is
+     * reclaimed.
+     *
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirClearCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void clearAsync(final ReservoirClearCallback callback) {
+        executeBarrier(new ClearTask(callback));
+    }
+
+    /**
+     * Clears the cache asynchronously. See {@link #clear()} for when the disk space is
+     * reclaimed.
+     *
+     * @return an {@link Observable} that will clear all the key-value pairs from the store.By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public Observable<Boolean> clearUsingObservable() {
+        return Observable.create(new Observable.OnSubscribe<Boolean>() {
+            @Override
+            public void call(Subscriber<? super Boolean> subscriber) {
+                try {
+                    ReservoirStore.this.clear();
+                    subscriber.onNext(true);
+                    subscriber.onCompleted();
+                } catch (Exception exception) {
+                    subscriber.onError(exception);
+                }
+            }
+        }).subscribeOn(barrierScheduler()).observeOn(callbackScheduler);
+    }
+
+    /**
+     * Maintains the disk cache: deletes expired objects, trims the cache down to the
+     * {@link ReservoirConfig.Builder#lowWaterMark low-water mark} if one is configured, and writes
+     * the journal entries that are still buffered. This a blocking IO operation. Running it when
+     * the app goes idle keeps that work away from the operations that follow.
+     *
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public void runMaintenance() throws IOException {
+        CacheGeneration current = acquireGeneration();
+        try {
+            removeExpired(current);
+            if (config.lowWaterMark >= 0) {
+                current.cache.trimTo(config.lowWaterMark);
+            }
+            current.cache.flush();
+        } finally {
+            current.release();
+        }
+    }
+
+    /**
+     * Deletes the expired objects of the given generation. Each one is deleted while holding its
+     * key's lock and only if it is still expired then, so a put that races with the sweep is
+     * never undone.
+     */
+    private void removeExpired(CacheGeneration current) throws IOException {
+        long now = System.currentTimeMillis();
+        for (String key : current.cache.expiredKeys(now)) {
+            Lock lock = lockFor(key);
+            lock.lock();
+            try {
+                current.cache.removeIfExpired(key, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #runMaintenance()} on the store's low priority maintenance thread and returns
+     * immediately. Failures are ignored, since the cache stays usable without maintenance.
+     *
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public void requestMaintenance() {
+        if (closed) {
+            throw new IllegalStateException("The store has been closed.");
+        }
+        try {
+            maintenanceExecutor.execute(maintenanceTask);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("The store has been closed.");
+        }
+    }
+
+    /**
+     * Returns the number of bytes being used currently by the cache.
+     *
+     * @throws IllegalStateException thrown if the store has been closed.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    long bytesUsed() throws IOException {
+        CacheGeneration current = acquireGeneration();
+        try {
+            return current.cache.bytesUsed();
+        } finally {
+            current.release();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the store since it was opened: hits, misses,
+     * evictions, bytes read and written, and how long reads and writes spent on disk and in the
+     * serializer.
+     *
+     * @return the statistics.
+     */
+    public CacheStats stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * Returns the number of reads that were served by the memory cache.
+     *
+     * @return the memory cache hit count, or 0 if the memory cache is disabled.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public long memoryCacheHitCount() {
+        return memoryCache != null ? memoryCache.hitCount() : 0;
+    }
+
+    /**
+     * Returns the number of reads that were not served by the memory cache and went to disk.
+     *
+     * @return the memory cache miss count, or 0 if the memory cache is disabled.
+     * @throws IllegalStateException thrown if the store has been closed.
+     */
+    public long memoryCacheMissCount() {
+        return memoryCache != null ? memoryCache.missCount() : 0;
+    }
+
+    /**
+     * A write of a key to the disk cache.
+     */
+    private interface DiskWrite {
+        void writeTo(SimpleDiskCache cache) throws IOException;
+    }
+
+    /**
+     * Serializes an object into the disk cache, keeping track of its size and of the time spent
+     * in the serializer as opposed to writing the disk cache.
+     */
+    private class SerializingWriter implements SimpleDiskCache.ValueWriter {
+        private final Object object;
+        private long bytes;
+        private long serializerNanos;
+
+        private SerializingWriter(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            StatsRecorder.TimedOutputStream timed = new StatsRecorder.TimedOutputStream(out);
+            long start = System.nanoTime();
+            config.serializer.serialize(object, timed);
+            serializerNanos = System.nanoTime() - start - timed.nanos;
+            bytes = timed.bytes;
+        }
+    }
+
+    /**
+     * OnSubscribe that emits the elements of a stored collection one at a time. Collections
+     * stored as JSON arrays by a {@link GsonSerializer} are parsed element by element as they
+     * are requested. Anything else is deserialized as a whole using the collection type and then
+     * emitted element by element.
+     */
+    private static class CollectionOnSubscribe<T> extends SyncOnSubscribe<CollectionOnSubscribe.State<T>, T> {
+        private final ReservoirStore store;
+        private final String key;
+        private final Type typeOfT;
+
+        /**
+         * The type the elements are parsed as, taken from the collection type so that elements
+         * of generic types are parsed fully. Falls back to the given class for raw collection
+         * types.
+         */
+        private final Type elementType;
+
+        private CollectionOnSubscribe(ReservoirStore store, String key, Class<T> classOfT,
+                                      Type typeOfT) {
+            this.store = store;
+            this.key = key;
+            this.typeOfT = typeOfT;
+            Class<?> rawType = $Gson$Types.getRawType(typeOfT);
+            Type elementType = classOfT;
+            if (Collection.class.isAssignableFrom(rawType)) {
+                elementType = $Gson$Types.getCollectionElementType(typeOfT, rawType);
+                if ($Gson$Types.getRawType(elementType) == Object.class) {
+                    elementType = classOfT;
+                }
+            }
+            this.elementType = elementType;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected State<T> generateState() {
+            if (store.memoryCache != null) {
+                Collection<T> collectionOfT = (Collection<T>) store.memoryCache.get(key, typeOfT);
+                if (collectionOfT != null) {
+                    return new State<>(collectionOfT.iterator());
+                }
+            }
+            try {
+                store.flush(key);
+            } catch (IOException exception) {
+                return new State<>(exception);
+            }
+            CacheGeneration current = store.acquireGeneration();
+            SimpleDiskCache.EntryInputStream in = null;
+            boolean streaming = false;
+            try {
+                in = current.cache.getInputStream(key);
+                if (in == null) {
+                    throw new NullPointerException();
+                }
+                Collection<T> collectionOfT;
+                if (store.config.serializer instanceof GsonSerializer) {
+                    GsonSerializer serializer = (GsonSerializer) store.config.serializer;
+                    JsonReader reader = serializer.newJsonReader(in);
+                    JsonToken token;
+                    try {
+                        token = reader.peek();
+                    } catch (EOFException e) {
+                        throw new NullPointerException();
+                    }
+                    if (token == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        streaming = true;
+                        return new State<>(current, in, serializer, reader);
+                    }
+                    collectionOfT = serializer.read(reader, typeOfT);
+                } else {
+                    collectionOfT = store.config.serializer.deserialize(in, typeOfT);
+                }
+                in.close();
+                if (collectionOfT == null) {
+                    throw new NullPointerException();
+                }
+                return new State<>(collectionOfT.iterator());
+            } catch (Exception exception) {
+                if (in != null) {
+                    in.close();
+                }
+                return new State<>(exception);
+            } finally {
+                if (!streaming) {
+                    current.release();
+                }
+            }
+        }
+
+        @Override
+        protected State<T> next(State<T> state, Observer<? super T> observer) {
+            try {
+                if (state.error != null) {
+                    observer.onError(state.error);
+                } else if (state.iterator != null) {
+                    if (state.iterator.hasNext()) {
+                        observer.onNext(state.iterator.next());
+                    } else {
+                        observer.onCompleted();
+                    }
+                } else if (state.reader.hasNext()) {
+                    observer.onNext(state.serializer.<T>read(state.reader, elementType));
+                } else {
+                    state.reader.endArray();
+                    observer.onCompleted();
+                }
+            } catch (Exception exception) {
+                observer.onError(exception);
+            }
+            return state;
+        }
+
+        @Override
+        protected void onUnsubscribe(State<T> state) {
+            if (state.in != null) {
+                state.in.close();
+                state.generation.release();
+            }
+        }
+
+        private static class State<T> {
+            private final CacheGeneration generation;
+            private final SimpleDiskCache.EntryInputStream in;
+            private final GsonSerializer serializer;
+            private final JsonReader reader;
+            private final Iterator<T> iterator;
+            private final Exception error;
+
+            private State(CacheGeneration generation, SimpleDiskCache.EntryInputStream in,
+                          GsonSerializer serializer, JsonReader reader) {
+                this.generation = generation;
+                this.in = in;
+                this.serializer = serializer;
+                this.reader = reader;
+                this.iterator = null;
+                this.error = null;
+            }
+
+            private State(Iterator<T> iterator) {
+                this.generation = null;
+                this.in = null;
+                this.serializer = null;
+                this.reader = null;
+                this.iterator = iterator;
+                this.error = null;
+            }
+
+            private State(Exception error) {
+                this.generation = null;
+                this.in = null;
+                this.serializer = null;
+                this.reader = null;
+                this.iterator = null;
+                this.error = error;
+            }
+        }
+    }
+
+    /**
+     * Work run on the store's executor whose result is delivered on the main thread.
+     */
+    private abstract class BackgroundTask<Result> implements Runnable {
+
+        protected abstract Result doInBackground();
+
+        protected abstract void onPostExecute(Result result);
+
+        @Override
+        public void run() {
+            final Result result = doInBackground();
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onPostExecute(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Task to perform put operations in a background thread.
+     */
+    private class PutTask extends BackgroundTask<Void> {
+        private final Map<String, ?> objects;
+        private final long expiresAt;
+        private Exception e;
+        private final ReservoirPutCallback callback;
+
+        private PutTask(Map<String, ?> objects, ReservoirPutCallback callback) {
+            this(objects, 0, callback);
+        }
+
+        private PutTask(Map<String, ?> objects, long expiresAt, ReservoirPutCallback callback) {
+            this.objects = objects;
+            this.expiresAt = expiresAt;
+            this.callback = callback;
+            this.e = null;
+        }
+
+        @Override
+        protected Void doInBackground() {
+
+            try {
+                for (Map.Entry<String, ?> entry : objects.entrySet()) {
+                    put(entry.getKey(), entry.getValue(), expiresAt);
+                }
+            } catch (Exception e) {
+                this.e = e;
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess();
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Task to put raw bytes in a background thread.
+     */
+    private class PutBytesTask extends BackgroundTask<Void> {
+        private final String key;
+        private final byte[] bytes;
+        private final ReservoirPutCallback callback;
+        private Exception e;
+
+        private PutBytesTask(String key, byte[] bytes, ReservoirPutCallback callback) {
+            this.key = key;
+            this.bytes = bytes;
+            this.callback = callback;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            try {
+                putBytes(key, bytes);
+            } catch (Exception e) {
+                this.e = e;
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess();
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Task to get raw bytes in a background thread.
+     */
+    private class GetBytesTask extends BackgroundTask<byte[]> {
+        private final String key;
+        private final ReservoirGetCallback<byte[]> callback;
+        private Exception e;
+
+        private GetBytesTask(String key, ReservoirGetCallback<byte[]> callback) {
+            this.key = key;
+            this.callback = callback;
+        }
+
+        @Override
+        protected byte[] doInBackground() {
+            try {
+                return getBytes(key);
+            } catch (Exception e) {
+                this.e = e;
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(byte[] bytes) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess(bytes);
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Task to perform get operation in a background thread.
+     */
+    private class GetTask implements Runnable {
+        private final InFlightLoads.Load load;
+        private final String key;
+        private final Type typeOfT;
+
+        private GetTask(InFlightLoads.Load load, String key, Type typeOfT) {
+            this.load = load;
+            this.key = key;
+            this.typeOfT = typeOfT;
+        }
+
+        @Override
+        public void run() {
+            Object object;
+            try {
+                object = get(key, typeOfT);
+            } catch (Exception e) {
+                load.fail(e);
+                return;
+            }
+            load.succeed(object);
+        }
+    }
+
+    /**
+     * Gets an object, and hands it over to a load if it is missing.
+     */
+    private class GetOrLoadTask<T> implements Runnable {
+        private final String key;
+        private final Type typeOfT;
+        private final ReservoirLoader<T> loader;
+        private final long maxAgeMillis;
+        private final InFlightLoads.Listener listener;
+
+        private GetOrLoadTask(String key, Type typeOfT, ReservoirLoader<T> loader,
+                              long maxAgeMillis, InFlightLoads.Listener listener) {
+            this.key = key;
+            this.typeOfT = typeOfT;
+            this.loader = loader;
+            this.maxAgeMillis = maxAgeMillis;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            Object object;
+            try {
+                object = getIfPresent(key, typeOfT);
+                if (object == null) {
+                    startRefresh(key, typeOfT, loader, listener);
+                    return;
+                }
+                refreshIfStale(key, typeOfT, loader, maxAgeMillis);
+            } catch (Exception e) {
+                listener.onFailed(e);
+                return;
+            }
+            listener.onLoaded(object);
+        }
+    }
+
+    /**
+     * Loads an object with a loader and puts it into the store.
+     */
+    private class RefreshTask<T> implements Runnable {
+        private final InFlightLoads.Load load;
+        private final String key;
+        private final ReservoirLoader<T> loader;
+
+        private RefreshTask(InFlightLoads.Load load, String key, ReservoirLoader<T> loader) {
+            this.load = load;
+            this.key = key;
+            this.loader = loader;
+        }
+
+        @Override
+        public void run() {
+            T object;
+            try {
+                // The generation is only held for the stat, so that a clear during a slow load
+                // isn't held up. Generations are never reused, so it still tells whether the
+                // store has been cleared since.
+                CacheGeneration started = acquireGeneration();
+                EntryStat expected;
+                try {
+                    expected = started.cache.stat(key);
+                } finally {
+                    started.release();
+                }
+                object = loader.load(key);
+                if (object == null) {
+                    throw new NullPointerException("The loader returned null for " + key);
+                }
+                putIfUnchanged(key, object, started, expected);
+            } catch (Exception e) {
+                load.fail(e);
+                return;
+            }
+            load.succeed(object);
+        }
+    }
+
+    /**
+     * Waits for the result of a load on the calling thread.
+     */
+    private static class BlockingListener implements InFlightLoads.Listener {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Object value;
+        private Exception e;
+
+        @Override
+        public void onLoaded(Object value) {
+            this.value = value;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailed(Exception e) {
+            this.e = e;
+            done.countDown();
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e != null) {
+                throw new IOException(e);
+            }
+            return (T) value;
+        }
+    }
+
+    /**
+     * Delivers the result of a get to a callback on the main thread.
+     */
+    private class CallbackListener<T> implements InFlightLoads.Listener {
+        private final ReservoirGetCallback<T> callback;
+
+        private CallbackListener(ReservoirGetCallback<T> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onLoaded(final Object value) {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void run() {
+                    if (callback != null) {
+                        callback.onSuccess((T) value);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onFailed(final Exception e) {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (callback != null) {
+                        callback.onFailure(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Task to perform get operations for several keys in a background thread.
+     */
+    private class GetAllTask<T> extends BackgroundTask<Map<String, T>> {
+        private final Collection<String> keys;
+        private final ReservoirGetCallback<Map<String, T>> callback;
+        private final Type typeOfT;
+        private Exception e;
+
+        private GetAllTask(Collection<String> keys, Type typeOfT,
+                           ReservoirGetCallback<Map<String, T>> callback) {
+            this.keys = keys;
+            this.callback = callback;
+            this.typeOfT = typeOfT;
+            this.e = null;
+        }
+
+        @Override
+        protected Map<String, T> doInBackground() {
+            try {
+                return getAll(keys, typeOfT);
+            } catch (Exception e) {
+                this.e = e;
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Map<String, T> objects) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess(objects);
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Task to perform delete operations in a background thread.
+     */
+    private class DeleteTask extends BackgroundTask<Void> {
+        private final Collection<String> keys;
+        private Exception e;
+        private final ReservoirDeleteCallback callback;
+
+        private DeleteTask(Collection<String> keys, ReservoirDeleteCallback callback) {
+            this.keys = keys;
+            this.callback = callback;
+            this.e = null;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            try {
+                deleteAll(keys);
+            } catch (Exception e) {
+                this.e = e;
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess();
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Task to delete the objects whose keys start with a prefix in a background thread.
+     */
+    private class DeletePrefixTask extends BackgroundTask<Void> {
+        private final String prefix;
+        private Exception e;
+        private final ReservoirDeleteCallback callback;
+
+        private DeletePrefixTask(String prefix, ReservoirDeleteCallback callback) {
+            this.prefix = prefix;
+            this.callback = callback;
+            this.e = null;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            try {
+                deletePrefix(prefix);
+            } catch (Exception e) {
+                this.e = e;
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess();
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Task to perform clear operation in a background thread.
+     */
+    private class ClearTask extends BackgroundTask<Void> {
+        private Exception e;
+        private final ReservoirClearCallback callback;
+
+        private ClearTask(ReservoirClearCallback callback) {
+            this.callback = callback;
+            this.e = null;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            try {
+                clear();
+            } catch (Exception e) {
+                this.e = e;
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            if (callback != null) {
+                if (e == null) {
+                    callback.onSuccess();
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.anupcowkur.reservoir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Converts objects to and from the bytes that Reservoir stores on disk.
+ *
+ * @see GsonSerializer
+ * @see BinarySerializer
+ */
+public interface Serializer {
+
+    /**
+     * Writes an object to the given stream. The stream must not be closed.
+     *
+     * @param object the object to serialize. May be null.
+     * @param out    the stream to write to.
+     * @throws IOException thrown if the stream cannot be written to.
+     */
+    void serialize(Object object, OutputStream out) throws IOException;
+
+    /**
+     * Reads an object of the given type from the given stream. The stream must not be closed.
+     *
+     * @param <T>  the type of the object to read.
+     * @param in   the stream to read from.
+     * @param type the type of the object to read.
+     * @return the object, or null if the stream holds no value.
+     * @throws IOException thrown if the stream cannot be read.
+     */
+    <T> T deserialize(InputStream in, Type type) throws IOException;
+}
@@ -0,0 +1,891 @@
+package com.anupcowkur.reservoir;
+
+import com.jakewharton.disklrucache.DiskLruCache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+class SimpleDiskCache {
+
+    static final String OBJECT_SIZE_GREATER_THAN_CACHE_SIZE_MESSAGE = "Object size greater than " +
+            "cache size!";
+    private static final int VALUE_IDX = 0;
+    private static final int METADATA_IDX = 1;
+
+    private static final int INTERNAL_KEY_CACHE_SIZE = 256;
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private static final String KEY_FILE_NAME = "keys";
+
+    /**
+     * The number of stale records the key file may hold beyond one per live key before it is
+     * rewritten.
+     */
+    private static final int KEY_FILE_SLACK = 256;
+
+    /**
+     * The number of steps a trim down to a lower size takes at most.
+     */
+    private static final int TRIM_STEPS = 32;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The number of caches whose index is built at the same time.
+     */
+    private static final int INDEX_THREAD_COUNT = 2;
+
+    /**
+     * Builds the indexes of opened caches on low priority daemon threads that are stopped when
+     * they are idle.
+     */
+    private static final ThreadPoolExecutor INDEX_EXECUTOR = newIndexExecutor();
+
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError();
+            }
+        }
+    };
+
+    private final DiskLruCache diskLruCache;
+    private final long maxSize;
+    private final int compressionThreshold;
+    private final Object trimLock = new Object();
+    private final KeyFile keyFile;
+
+    /**
+     * Opened when the index has been built. Lookups in the index wait for it, writes don't.
+     */
+    private final CountDownLatch indexBuilt = new CountDownLatch(1);
+
+    private final Runnable indexTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                buildIndex();
+            } finally {
+                indexBuilt.countDown();
+            }
+        }
+    };
+
+    /**
+     * Set when the cache is closed, to stop the index build.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The size and timestamps of the entries, by internal key, so that probes don't have to
+     * open any files. DiskLruCache evicts without telling, so an entry may outlive its files
+     * here until it is next looked up.
+     */
+    private final ConcurrentMap<String, EntryStat> index =
+            new ConcurrentHashMap<String, EntryStat>();
+
+    /**
+     * The internal keys of the entries whose key is known, sorted by key, so that the keys with
+     * a prefix can be listed. A key is added before its entry is written and is only listed once
+     * the entry is in the index.
+     */
+    private final ConcurrentSkipListMap<String, String> keyIndex =
+            new ConcurrentSkipListMap<String, String>();
+
+    private final Map<String, String> internalKeys =
+            new LinkedHashMap<String, String>(INTERNAL_KEY_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > INTERNAL_KEY_CACHE_SIZE;
+                }
+            };
+
+    private SimpleDiskCache(File dir, int appVersion, long maxSize, int compressionThreshold)
+            throws IOException {
+        diskLruCache = DiskLruCache.open(dir, appVersion, 2, maxSize);
+        this.maxSize = maxSize;
+        this.compressionThreshold = compressionThreshold;
+        keyFile = new KeyFile(new File(dir, KEY_FILE_NAME));
+    }
+
+    private static ThreadPoolExecutor newIndexExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(INDEX_THREAD_COUNT,
+                INDEX_THREAD_COUNT, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "Reservoir index #" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Opens the cache in the given directory. The index is built on a background thread, so
+     * opening doesn't depend on the number of entries.
+     *
+     * @param compressionThreshold values larger than this many bytes are stored compressed. A
+     *                             negative value disables compression.
+     */
+    static SimpleDiskCache open(File dir, int appVersion, long maxSize, int compressionThreshold)
+            throws IOException {
+
+        SimpleDiskCache cache = new SimpleDiskCache(dir, appVersion, maxSize, compressionThreshold);
+        INDEX_EXECUTOR.execute(cache.indexTask);
+        return cache;
+    }
+
+    /**
+     * Opens the value for the given key for reading, or returns null if there is none or it has
+     * expired. The caller must close the returned stream.
+     */
+    EntryInputStream getInputStream(String key) throws IOException {
+        DiskLruCache.Snapshot snapshot = diskLruCache.get(toInternalKey(key));
+        if (snapshot == null) {
+            return null;
+        }
+        try {
+            EntryMetadata metadata = EntryMetadata.read(snapshot.getInputStream(METADATA_IDX),
+                    snapshot.getLength(METADATA_IDX));
+            if (metadata.isExpired(System.currentTimeMillis())) {
+                snapshot.close();
+                return null;
+            }
+            InputStream raw = snapshot.getInputStream(VALUE_IDX);
+            InputStream in = raw;
+            long length = snapshot.getLength(VALUE_IDX);
+            if (metadata.deflated) {
+                in = new InflaterInputStream(raw);
+                length = metadata.length;
+            }
+            return new EntryInputStream(snapshot, in, length, metadata.expiresAt,
+                    metadata.deflated ? null : raw);
+        } catch (IOException | RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the maximum size the cache was opened with. Trims lower DiskLruCache's limit for
+     * a short while, but not this value.
+     */
+    long getMaxSize() {
+        return maxSize;
+    }
+
+    boolean contains(String key) {
+        return stat(key) != null;
+    }
+
+    /**
+     * Returns the size and timestamps of the value for the given key, or null if there is none
+     * or it has expired. The answer comes from the index, which is only checked against the
+     * existence of the entry's file, so neither the value nor the metadata is read and the
+     * entry isn't counted as used. Waits for the index if it is still being built.
+     */
+    EntryStat stat(String key) {
+        awaitIndex();
+        String internalKey = toInternalKey(key);
+        EntryStat stat = index.get(internalKey);
+        if (stat == null || stat.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        if (!valueFile(internalKey).exists()) {
+            unindex(internalKey, stat);
+            return null;
+        }
+        return stat;
+    }
+
+    /**
+     * Returns the keys that start with the given prefix and have a value that hasn't expired,
+     * in ascending order. Keys are listed from the index. Entries written by versions of
+     * Reservoir that didn't record their key aren't listed.
+     */
+    List<String> keys(String prefix) {
+        awaitIndex();
+        List<String> keys = new ArrayList<>();
+        for (String key : keyIndex.tailMap(prefix).keySet()) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            if (stat(key) != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private CacheOutputStream openStream(String key, long expiresAt) throws IOException {
+        String internalKey = toInternalKey(key);
+        DiskLruCache.Editor editor = diskLruCache.edit(internalKey);
+        if (editor == null) {
+            throw new IOException("Entry for key " + key + " is already being written");
+        }
+        try {
+            recordKey(key, internalKey);
+            BufferedOutputStream bos = new BufferedOutputStream(editor.newOutputStream(VALUE_IDX));
+            CacheOutputStream cos = new CacheOutputStream(bos, editor, getMaxSize());
+            cos.metadata.expiresAt = expiresAt;
+            return cos;
+        } catch (IOException e) {
+            editor.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the value for the given key by handing the entry's output stream to the given
+     * writer, so the value never has to be held in memory as a whole. The entry is committed
+     * when the writer returns and discarded if it throws, or if the value turns out to be
+     * larger than the cache. Values larger than the compression threshold are compressed on
+     * the way, and the codec is recorded in the entry's metadata.
+     *
+     * @param expiresAt the time in milliseconds since the epoch at which the entry expires, or
+     *                  0 if it never does.
+     */
+    void put(String key, ValueWriter writer, long expiresAt) throws IOException {
+        CacheOutputStream cos = openStream(key, expiresAt);
+        CompressingOutputStream compressor = null;
+        try {
+            if (compressionThreshold >= 0) {
+                compressor = new CompressingOutputStream(cos, compressionThreshold);
+                writer.write(compressor);
+                compressor.finish();
+            } else {
+                writer.write(cos);
+            }
+        } catch (IOException | RuntimeException e) {
+            cos.failed = true;
+            throw e;
+        } finally {
+            if (compressor != null) {
+                compressor.release();
+            }
+            cos.close();
+        }
+        long length = compressor != null ? compressor.length : cos.count;
+        index.put(toInternalKey(key), new EntryStat(length, System.currentTimeMillis(), expiresAt,
+                key));
+    }
+
+    /**
+     * Adds the given key to the key index and appends it to the key file if it isn't there
+     * already. This happens before the entry is written, so that the file never misses the key
+     * of an entry that exists.
+     */
+    private void recordKey(String key, String internalKey) throws IOException {
+        if (keyIndex.put(key, internalKey) == null) {
+            try {
+                keyFile.append(key);
+            } catch (IOException e) {
+                keyIndex.remove(key, internalKey);
+                throw e;
+            }
+        }
+    }
+
+    void put(String key, final byte[] value) throws IOException {
+        put(key, value, 0);
+    }
+
+    /**
+     * Writes the given bytes as the value for the given key.
+     *
+     * @param expiresAt the time in milliseconds since the epoch at which the entry expires, or
+     *                  0 if it never does.
+     */
+    void put(String key, final byte[] value, long expiresAt) throws IOException {
+        put(key, new ValueWriter() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                out.write(value);
+            }
+        }, expiresAt);
+    }
+
+    /**
+     * Writes the value for the given key by copying the given stream up to its end. The stream
+     * isn't closed.
+     *
+     * @param expiresAt the time in milliseconds since the epoch at which the entry expires, or
+     *                  0 if it never does.
+     * @return the number of bytes copied.
+     */
+    long put(String key, final InputStream in, long expiresAt) throws IOException {
+        final long[] copied = new long[1];
+        put(key, new ValueWriter() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                    copied[0] += count;
+                }
+            }
+        }, expiresAt);
+        return copied[0];
+    }
+
+    /**
+     * Reads the whole value for the given key, or returns null if there is none or it has
+     * expired.
+     */
+    byte[] getBytes(String key) throws IOException {
+        EntryInputStream in = getInputStream(key);
+        if (in == null) {
+            return null;
+        }
+        try {
+            if (in.getLength() > Integer.MAX_VALUE) {
+                throw new IOException("Value for key " + key + " is too large for a byte array");
+            }
+            byte[] bytes = new byte[(int) in.getLength()];
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read == -1) {
+                    throw new EOFException();
+                }
+                offset += read;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    void delete(String key) throws IOException {
+        String internalKey = toInternalKey(key);
+        diskLruCache.remove(internalKey);
+        index.remove(internalKey);
+        keyIndex.remove(key);
+    }
+
+    public void destroy() throws IOException {
+        stopIndexBuild();
+        keyFile.close();
+        diskLruCache.delete();
+        index.clear();
+        keyIndex.clear();
+    }
+
+    void close() throws IOException {
+        stopIndexBuild();
+        keyFile.close();
+        diskLruCache.close();
+    }
+
+    long bytesUsed() throws IOException {
+        return diskLruCache.size();
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is no larger than the given size.
+     * DiskLruCache holds its lock while it evicts, so the entries are evicted in small steps to
+     * let other operations in between.
+     */
+    void trimTo(long size) throws IOException {
+        synchronized (trimLock) {
+            long step = Math.max(1, maxSize / TRIM_STEPS);
+            try {
+                long current;
+                while ((current = diskLruCache.size()) > size) {
+                    diskLruCache.setMaxSize(Math.max(size, current - step));
+                    diskLruCache.flush();
+                    if (diskLruCache.size() >= current) {
+                        // Only entries that are being written are left.
+                        break;
+                    }
+                }
+            } finally {
+                diskLruCache.setMaxSize(maxSize);
+            }
+        }
+        pruneIndex();
+    }
+
+    /**
+     * Writes the journal entries that are still buffered to disk.
+     */
+    void flush() throws IOException {
+        diskLruCache.flush();
+    }
+
+    /**
+     * Returns the keys of the entries that have expired, as listed by the index, so that finding
+     * them neither reads any files nor counts as an access to the entries. Expired entries whose
+     * key isn't known are left for the cache to evict.
+     */
+    List<String> expiredKeys(long now) {
+        awaitIndex();
+        List<String> keys = new ArrayList<>();
+        for (EntryStat stat : index.values()) {
+            if (stat.key != null && stat.isExpired(now)) {
+                keys.add(stat.key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Removes the entry of the given key if it has expired. The caller must hold the lock that
+     * puts of the key hold, so that the entry can't be rewritten between the check and the
+     * removal.
+     *
+     * @return whether the entry was removed.
+     */
+    boolean removeIfExpired(String key, long now) throws IOException {
+        awaitIndex();
+        String internalKey = toInternalKey(key);
+        EntryStat stat = index.get(internalKey);
+        if (stat == null || !stat.isExpired(now)) {
+            return false;
+        }
+        boolean removed = diskLruCache.remove(internalKey);
+        unindex(internalKey, stat);
+        return removed;
+    }
+
+    /**
+     * Fills the index from the cache directory and the key file. Values get their length and
+     * timestamp from their files, and only metadata files that aren't empty are read, for the
+     * expiry and the length of compressed values. Files that are being written have other names
+     * and are skipped. Entries that are written or deleted meanwhile have already updated the
+     * index, so they aren't overwritten, and any that are listed after they were deleted are
+     * dropped when they are next looked up. The key file is rewritten if most of its keys no
+     * longer have an entry.
+     */
+    private void buildIndex() {
+        if (closed) {
+            return;
+        }
+        List<String> recordedKeys;
+        try {
+            recordedKeys = keyFile.read();
+        } catch (IOException e) {
+            // The entries are still found by their key, they just aren't listed.
+            recordedKeys = new ArrayList<>();
+        }
+        Map<String, String> keysByInternalKey = new HashMap<>();
+        for (String key : recordedKeys) {
+            keysByInternalKey.put(md5(key), key);
+        }
+        File[] files = diskLruCache.getDirectory().listFiles();
+        if (files == null) {
+            return;
+        }
+        String suffix = "." + VALUE_IDX;
+        for (File file : files) {
+            if (closed) {
+                return;
+            }
+            String name = file.getName();
+            if (!name.endsWith(suffix) || name.startsWith("journal")) {
+                continue;
+            }
+            String internalKey = name.substring(0, name.length() - suffix.length());
+            long length = file.length();
+            long lastModified = file.lastModified();
+            File metadataFile = new File(file.getParentFile(), internalKey + "." + METADATA_IDX);
+            long metadataLength = metadataFile.length();
+            long expiresAt = 0;
+            if (metadataLength > 0) {
+                InputStream in = null;
+                try {
+                    in = new FileInputStream(metadataFile);
+                    EntryMetadata metadata = EntryMetadata.read(in, metadataLength);
+                    expiresAt = metadata.expiresAt;
+                    if (metadata.deflated) {
+                        length = metadata.length;
+                    }
+                } catch (IOException e) {
+                    // A broken entry, which DiskLruCache will drop when it is read.
+                    continue;
+                } finally {
+                    closeQuietly(in);
+                }
+            }
+            String key = keysByInternalKey.get(internalKey);
+            EntryStat stat = new EntryStat(length, lastModified, expiresAt, key);
+            if (index.putIfAbsent(internalKey, stat) == null && key != null) {
+                keyIndex.put(key, internalKey);
+            }
+        }
+        if (recordedKeys.size() > 2 * keyIndex.size() + KEY_FILE_SLACK) {
+            try {
+                keyFile.rewrite(keyIndex.keySet());
+            } catch (IOException ignored) {
+                // The stale keys stay until the next time the cache is opened.
+            }
+        }
+    }
+
+    /**
+     * Stops the index build, so that it doesn't walk the directory once the cache is closed or
+     * deleted. A build that hasn't started is dropped, and one that is going on is waited for
+     * until it notices.
+     */
+    private void stopIndexBuild() {
+        closed = true;
+        if (INDEX_EXECUTOR.remove(indexTask)) {
+            indexBuilt.countDown();
+        }
+        awaitIndex();
+    }
+
+    private void awaitIndex() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                indexBuilt.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Drops the entries whose files DiskLruCache has evicted from the index.
+     */
+    private void pruneIndex() {
+        awaitIndex();
+        for (Map.Entry<String, EntryStat> entry : index.entrySet()) {
+            if (!valueFile(entry.getKey()).exists()) {
+                unindex(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops the given entry from the index, unless it has been replaced since.
+     */
+    private void unindex(String internalKey, EntryStat stat) {
+        if (index.remove(internalKey, stat) && stat.key != null) {
+            keyIndex.remove(stat.key, internalKey);
+        }
+    }
+
+    private File valueFile(String internalKey) {
+        return new File(diskLruCache.getDirectory(), internalKey + "." + VALUE_IDX);
+    }
+
+    /**
+     * Writes the metadata of an entry. Entries with nothing to record get an empty file, which
+     * DiskLruCache needs for every value of a new entry.
+     */
+    private void writeMetadata(EntryMetadata metadata, DiskLruCache.Editor editor)
+            throws IOException {
+        OutputStream out = null;
+        try {
+            out = editor.newOutputStream(METADATA_IDX);
+            metadata.write(out);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private void closeQuietly(Closeable output) {
+        try {
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException ioe) {
+            // ignore
+        }
+    }
+
+    private String toInternalKey(String key) {
+        synchronized (internalKeys) {
+            String internalKey = internalKeys.get(key);
+            if (internalKey != null) {
+                return internalKey;
+            }
+        }
+        String internalKey = md5(key);
+        synchronized (internalKeys) {
+            internalKeys.put(key, internalKey);
+        }
+        return internalKey;
+    }
+
+    private static String md5(String s) {
+        byte[] digest = MD5.get().digest(s.getBytes(UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xF];
+        }
+        // Entries have always been named after BigInteger.toString(16) of the digest, which has
+        // no leading zeros. Strip them too so existing caches stay readable.
+        int start = 0;
+        while (start < hex.length - 1 && hex[start] == '0') {
+            start++;
+        }
+        return new String(hex, start, hex.length - start);
+    }
+
+    private class CacheOutputStream extends FilterOutputStream {
+
+        private final DiskLruCache.Editor editor;
+        private final long maxSize;
+        private final EntryMetadata metadata = new EntryMetadata();
+        private long count = 0;
+        private boolean failed = false;
+
+        private CacheOutputStream(OutputStream os, DiskLruCache.Editor editor, long maxSize) {
+            super(os);
+            this.editor = editor;
+            this.maxSize = maxSize;
+        }
+
+        private void ensureCapacity(int length) throws IOException {
+            count += length;
+            if (count > maxSize) {
+                throw new IOException(OBJECT_SIZE_GREATER_THAN_CACHE_SIZE_MESSAGE);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException closeException = null;
+            try {
+                super.close();
+            } catch (IOException e) {
+                closeException = e;
+            }
+
+            if (!failed && closeException == null) {
+                try {
+                    writeMetadata(metadata, editor);
+                } catch (IOException e) {
+                    closeException = e;
+                }
+            }
+
+            if (failed || closeException != null) {
+                editor.abort();
+            } else {
+                editor.commit();
+            }
+
+            if (closeException != null) {
+                throw closeException;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                super.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(int oneByte) throws IOException {
+            try {
+                ensureCapacity(1);
+                out.write(oneByte);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer) throws IOException {
+            try {
+                ensureCapacity(buffer.length);
+                out.write(buffer);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                ensureCapacity(length);
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    interface ValueWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Buffers the first {@code threshold} bytes of a value and writes them as they are if the
+     * value ends there. Larger values are deflated.
+     */
+    private static class CompressingOutputStream extends OutputStream {
+
+        private final CacheOutputStream out;
+        private final int threshold;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private Deflater deflater;
+        private DeflaterOutputStream deflaterStream;
+        private long length = 0;
+
+        private CompressingOutputStream(CacheOutputStream out, int threshold) {
+            this.out = out;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int oneByte) throws IOException {
+            write(new byte[]{(byte) oneByte}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            this.length += length;
+            if (deflaterStream == null && this.buffer.size() + length > threshold) {
+                deflater = new Deflater();
+                deflaterStream = new DeflaterOutputStream(out, deflater);
+                this.buffer.writeTo(deflaterStream);
+                this.buffer = null;
+            }
+            if (deflaterStream != null) {
+                deflaterStream.write(buffer, offset, length);
+            } else {
+                this.buffer.write(buffer, offset, length);
+            }
+        }
+
+        /**
+         * Writes out whatever is still buffered and records the codec in the entry's metadata.
+         */
+        private void finish() throws IOException {
+            if (deflaterStream != null) {
+                deflaterStream.finish();
+                out.metadata.deflated = true;
+                out.metadata.length = length;
+            } else {
+                buffer.writeTo(out);
+            }
+        }
+
+        private void release() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    static class EntryInputStream extends FilterInputStream {
+        private final DiskLruCache.Snapshot snapshot;
+        private final long length;
+        private final long expiresAt;
+        private final InputStream file;
+
+        private EntryInputStream(DiskLruCache.Snapshot snapshot, InputStream in, long length,
+                                 long expiresAt, InputStream file) {
+            super(in);
+            this.snapshot = snapshot;
+            this.length = length;
+            this.expiresAt = expiresAt;
+            this.file = file;
+        }
+
+        /**
+         * Maps the value into memory, as an alternative to reading it through this stream. The
+         * mapping stays valid after the stream is closed and isn't affected by later writes or
+         * deletes of the key, which replace or unlink the entry's file rather than change it.
+         *
+         * @return a read-only buffer of the value, or null if the value is compressed and can't
+         * be mapped.
+         */
+        ByteBuffer map() throws IOException {
+            if (!(file instanceof FileInputStream)) {
+                return null;
+            }
+            FileChannel channel = ((FileInputStream) file).getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, channel.position(),
+                    channel.size() - channel.position()).asReadOnlyBuffer();
+        }
+
+        /**
+         * Returns the length of the value in bytes, before any compression.
+         */
+        long getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the time in milliseconds since the epoch at which the entry expires, or 0 if
+         * it never does.
+         */
+        long getExpiresAt() {
+            return expiresAt;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            } finally {
+                snapshot.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.anupcowkur.reservoir;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the statistics of a store and passes every event on to its listener, if it has one.
+ * Safe for use by several threads at once.
+ */
+class StatsRecorder {
+
+    private final CacheListener listener;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong putCount = new AtomicLong();
+    private final AtomicLong deleteCount = new AtomicLong();
+    private final AtomicLong clearCount = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final LatencyHistogram.Recorder readLatency = new LatencyHistogram.Recorder();
+    private final LatencyHistogram.Recorder writeLatency = new LatencyHistogram.Recorder();
+    private final LatencyHistogram.Recorder deserializeLatency = new LatencyHistogram.Recorder();
+    private final LatencyHistogram.Recorder serializeLatency = new LatencyHistogram.Recorder();
+
+    /**
+     * @param listener the listener to pass events on to. May be null.
+     */
+    StatsRecorder(CacheListener listener) {
+        this.listener = listener;
+    }
+
+    void recordMemoryHit(String key) {
+        hitCount.incrementAndGet();
+        memoryHitCount.incrementAndGet();
+        if (listener != null) {
+            listener.onGet(key, true, 0, 0, 0);
+        }
+    }
+
+    void recordMiss(String key, long ioNanos) {
+        missCount.incrementAndGet();
+        readLatency.record(ioNanos);
+        if (listener != null) {
+            listener.onGet(key, false, 0, ioNanos, 0);
+        }
+    }
+
+    void recordDiskHit(String key, long bytes, long ioNanos, long serializerNanos) {
+        hitCount.incrementAndGet();
+        bytesRead.addAndGet(bytes);
+        readLatency.record(ioNanos);
+        deserializeLatency.record(serializerNanos);
+        if (listener != null) {
+            listener.onGet(key, true, bytes, ioNanos, serializerNanos);
+        }
+    }
+
+    void recordPut(String key, long bytes, long ioNanos, long serializerNanos) {
+        putCount.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+        writeLatency.record(ioNanos);
+        serializeLatency.record(serializerNanos);
+        if (listener != null) {
+            listener.onPut(key, bytes, ioNanos, serializerNanos);
+        }
+    }
+
+    void recordDelete(String key) {
+        deleteCount.incrementAndGet();
+        if (listener != null) {
+            listener.onDelete(key);
+        }
+    }
+
+    void recordEviction(String key, long bytes) {
+        evictionCount.incrementAndGet();
+        if (listener != null) {
+            listener.onEviction(key, bytes);
+        }
+    }
+
+    void recordClear() {
+        clearCount.incrementAndGet();
+        if (listener != null) {
+            listener.onClear();
+        }
+    }
+
+    CacheStats snapshot() {
+        return new CacheStats(hitCount.get(), missCount.get(), memoryHitCount.get(),
+                evictionCount.get(), putCount.get(), deleteCount.get(), clearCount.get(),
+                bytesRead.get(), bytesWritten.get(), readLatency.snapshot(),
+                writeLatency.snapshot(), deserializeLatency.snapshot(),
+                serializeLatency.snapshot());
+    }
+
+    /**
+     * Counts the bytes read through it and the time spent reading them, so that the time a
+     * serializer spends on the stream can be told apart from the time it spends on the object.
+     */
+    static class TimedInputStream extends FilterInputStream {
+        long bytes;
+        long nanos;
+
+        TimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = in.read();
+            nanos += System.nanoTime() - start;
+            if (b != -1) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            int count = in.read(buffer, offset, length);
+            nanos += System.nanoTime() - start;
+            if (count > 0) {
+                bytes += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            long skipped = in.skip(n);
+            nanos += System.nanoTime() - start;
+            bytes += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it and the time spent writing them.
+     */
+    static class TimedOutputStream extends FilterOutputStream {
+        long bytes;
+        long nanos;
+
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            out.write(buffer, offset, length);
+            nanos += System.nanoTime() - start;
+            bytes += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.anupcowkur.reservoir;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The puts that haven't been written to disk yet when write-behind is enabled. Objects are kept
+ * serialized, and only the latest one of each key is kept, so repeated puts of a key are written
+ * once. Entries stay in the buffer while they are written, so reads keep finding them until they
+ * are on disk.
+ */
+class WriteBehindBuffer {
+
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+
+    /**
+     * Buffers an object for the given key, replacing the object buffered for it before.
+     *
+     * @return the number of buffered objects, including this one.
+     */
+    synchronized int put(String key, Pending entry) {
+        pending.remove(key);
+        pending.put(key, entry);
+        return pending.size();
+    }
+
+    /**
+     * Returns the entry buffered for the given key, or null if there is none.
+     */
+    synchronized Pending get(String key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Drops the entry buffered for the given key, so that it is never written.
+     */
+    synchronized void remove(String key) {
+        pending.remove(key);
+    }
+
+    /**
+     * Drops the given entry once it has been written, unless it has been replaced since.
+     */
+    synchronized void remove(String key, Pending entry) {
+        if (pending.get(key) == entry) {
+            pending.remove(key);
+        }
+    }
+
+    synchronized void clear() {
+        pending.clear();
+    }
+
+    synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Returns the buffered entries in the order they were last put.
+     */
+    synchronized Map<String, Pending> snapshot() {
+        return new LinkedHashMap<>(pending);
+    }
+
+    static class Pending {
+        final byte[] value;
+
+        /**
+         * The class of the object that was put, or null if it was null. Only gets of exactly
+         * this type are served from the buffer.
+         */
+        final Class<?> type;
+        final long expiresAt;
+        final long serializerNanos;
+
+        Pending(byte[] value, Class<?> type, long expiresAt, long serializerNanos) {
+            this.value = value;
+            this.type = type;
+            this.expiresAt = expiresAt;
+            this.serializerNanos = serializerNanos;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt != 0 && now >= expiresAt;
+        }
+    }
+}
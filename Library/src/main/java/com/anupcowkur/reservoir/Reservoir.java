@@ -1,32 +1,63 @@
 package com.anupcowkur.reservoir;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 
 import com.google.gson.Gson;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import rx.Observable;
-import rx.Subscriber;
 import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 
 /**
  * The main reservoir class.
  */
 public class Reservoir {
 
-    private static SimpleDiskCache cache;
+    private static final int READ_THREAD_COUNT = 2;
 
-    private static File cacheDir;
+    private static final int WRITE_THREAD_COUNT = 1;
 
-    private static boolean initialised = false;
+    private static Executor readExecutor;
+
+    private static Executor writeExecutor;
+
+    /**
+     * Lowers the priority of the threads that read and write for the stores, so that they don't
+     * compete with the UI.
+     */
+    private static final Runnable BACKGROUND_PRIORITY = new Runnable() {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        }
+    };
+
+    private static final Executor mainThreadExecutor = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable runnable) {
+            handler.post(runnable);
+        }
+    };
+
+    private static volatile ReservoirStore defaultStore;
+
+    private static final Map<String, ReservoirStore> stores = new HashMap<>();
 
-    private static Gson sGson;
 
     /**
      * Initialize Reservoir
@@ -36,7 +67,7 @@ public class Reservoir {
      * @throws IOException thrown if the cache cannot be initialized.
      */
     public static synchronized void init(final Context context, final long maxSize) throws IOException {
-        init(context, maxSize, new Gson());
+        init(context, maxSize, new GsonSerializer());
     }
 
     /**
@@ -48,43 +79,180 @@ public class Reservoir {
      * @throws IOException thrown if the cache cannot be initialized.
      */
     public static synchronized void init(final Context context, final long maxSize, final Gson gson) throws IOException {
+        init(context, maxSize, new GsonSerializer(gson));
+    }
+
+    /**
+     * Initialize Reservoir
+     *
+     * @param context    context.
+     * @param maxSize    the maximum size in bytes.
+     * @param serializer the serializer that converts objects to and from their stored form.
+     * @throws IOException thrown if the cache cannot be initialized.
+     */
+    public static synchronized void init(final Context context, final long maxSize,
+                                         final Serializer serializer) throws IOException {
+        init(context, maxSize, serializer, 0);
+    }
+
+    /**
+     * Initialize Reservoir with an in-memory cache in front of the disk cache. Objects read
+     * from Reservoir are kept in memory, so reading the same key again with the same type
+     * returns the same instance without touching the disk. Don't modify objects returned by
+     * Reservoir if you enable the memory cache.
+     *
+     * @param context         context.
+     * @param maxSize         the maximum size in bytes.
+     * @param memoryCacheSize the maximum size of the memory cache in bytes, as measured by the
+     *                        serialized size of the objects it holds. 0 disables it.
+     * @throws IOException thrown if the cache cannot be initialized.
+     */
+    public static synchronized void init(final Context context, final long maxSize,
+                                         final long memoryCacheSize) throws IOException {
+        init(context, maxSize, new GsonSerializer(), memoryCacheSize);
+    }
+
+    /**
+     * Initialize Reservoir with an in-memory cache in front of the disk cache. Objects read
+     * from Reservoir are kept in memory, so reading the same key again with the same type
+     * returns the same instance without touching the disk. Don't modify objects returned by
+     * Reservoir if you enable the memory cache.
+     *
+     * @param context         context.
+     * @param maxSize         the maximum size in bytes.
+     * @param gson            the Gson instance.
+     * @param memoryCacheSize the maximum size of the memory cache in bytes, as measured by the
+     *                        serialized size of the objects it holds. 0 disables it.
+     * @throws IOException thrown if the cache cannot be initialized.
+     */
+    public static synchronized void init(final Context context, final long maxSize, final Gson gson,
+                                         final long memoryCacheSize) throws IOException {
+        init(context, maxSize, new GsonSerializer(gson), memoryCacheSize);
+    }
+
+    /**
+     * Initialize Reservoir with an in-memory cache in front of the disk cache. Objects read
+     * from Reservoir are kept in memory, so reading the same key again with the same type
+     * returns the same instance without touching the disk. Don't modify objects returned by
+     * Reservoir if you enable the memory cache.
+     *
+     * @param context         context.
+     * @param maxSize         the maximum size in bytes.
+     * @param serializer      the serializer that converts objects to and from their stored form.
+     * @param memoryCacheSize the maximum size of the memory cache in bytes, as measured by the
+     *                        serialized size of the objects it holds. 0 disables it.
+     * @throws IOException thrown if the cache cannot be initialized.
+     */
+    public static synchronized void init(final Context context, final long maxSize,
+                                         final Serializer serializer, final long memoryCacheSize)
+            throws IOException {
+        init(context, new ReservoirConfig.Builder(maxSize)
+                .serializer(serializer)
+                .memoryCacheSize(memoryCacheSize)
+                .build());
+    }
+
+    /**
+     * Initialize Reservoir
+     *
+     * @param context context.
+     * @param config  the configuration, see {@link ReservoirConfig.Builder}.
+     * @throws IOException thrown if the cache cannot be initialized.
+     */
+    public static synchronized void init(final Context context, final ReservoirConfig config)
+            throws IOException {
+        if (defaultStore != null) {
+            defaultStore.close();
+        }
         //Create a directory inside the application specific cache directory. This is where all
         // the key-value pairs will be stored.
-        cacheDir = new File(context.getCacheDir() + "/Reservoir");
-        createCache(cacheDir, maxSize);
-        sGson = gson;
-        initialised = true;
+        defaultStore = openStore(new File(context.getCacheDir() + "/Reservoir"), config);
     }
 
     /**
-     * Checks if init method has been called and throws an IllegalStateException if it hasn't.
+     * Opens a named store. Each store has its own directory, maximum size and least recently
+     * used eviction, so objects put into one never evict objects of another. Opening a store
+     * that is already open returns the open instance and ignores the given maximum size.
      *
-     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @param context context.
+     * @param name    the name of the store, made of letters, digits, '_' and '-'.
+     * @param maxSize the maximum size in bytes.
+     * @return the store.
+     * @throws IOException thrown if the store cannot be opened.
      */
-    private static void failIfNotInitialised() {
-        if (!initialised) {
-            throw new IllegalStateException("Init hasn't been called! You need to initialise " +
-                    "Reservoir before you call any other methods.");
-        }
+    public static ReservoirStore open(final Context context, final String name,
+                                      final long maxSize) throws IOException {
+        return open(context, name, new ReservoirConfig.Builder(maxSize).build());
     }
 
     /**
-     * Creates the cache.
+     * Opens a named store. Each store has its own directory, maximum size and least recently
+     * used eviction, so objects put into one never evict objects of another. Opening a store
+     * that is already open returns the open instance and ignores the given maximum size and
+     * serializer.
      *
-     * @param cacheDir the directory where the cache is to be created.
-     * @param maxSize  the maximum cache size in bytes.
-     * @throws IOException thrown if the cache cannot be created.
+     * @param context    context.
+     * @param name       the name of the store, made of letters, digits, '_' and '-'.
+     * @param maxSize    the maximum size in bytes.
+     * @param serializer the serializer that converts objects to and from their stored form.
+     * @return the store.
+     * @throws IOException thrown if the store cannot be opened.
+     */
+    public static ReservoirStore open(final Context context, final String name,
+                                      final long maxSize, final Serializer serializer)
+            throws IOException {
+        return open(context, name, new ReservoirConfig.Builder(maxSize)
+                .serializer(serializer)
+                .build());
+    }
+
+    /**
+     * Opens a named store. Each store has its own directory, maximum size and least recently
+     * used eviction, so objects put into one never evict objects of another. Opening a store
+     * that is already open returns the open instance and ignores the given configuration.
+     *
+     * @param context context.
+     * @param name    the name of the store, made of letters, digits, '_' and '-'.
+     * @param config  the configuration, see {@link ReservoirConfig.Builder}.
+     * @return the store.
+     * @throws IOException thrown if the store cannot be opened.
      */
-    private static synchronized void createCache(final File cacheDir, final long maxSize) throws
-            IOException {
-        boolean success = true;
-        if (!cacheDir.exists()) {
-            success = cacheDir.mkdir();
+    public static synchronized ReservoirStore open(final Context context, final String name,
+                                                   final ReservoirConfig config)
+            throws IOException {
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("Invalid store name: " + name);
         }
-        if (!success) {
-            throw new IOException("Failed to create cache directory!");
+        ReservoirStore store = stores.get(name);
+        if (store == null || store.isClosed()) {
+            store = openStore(new File(context.getCacheDir() + "/Reservoir_" + name), config);
+            stores.put(name, store);
+        }
+        return store;
+    }
+
+    private static ReservoirStore openStore(final File directory, final ReservoirConfig config)
+            throws IOException {
+        if (readExecutor == null) {
+            readExecutor = ReservoirStore.newThreadPool("Reservoir read", READ_THREAD_COUNT,
+                    BACKGROUND_PRIORITY);
+            writeExecutor = ReservoirStore.newThreadPool("Reservoir write", WRITE_THREAD_COUNT,
+                    BACKGROUND_PRIORITY);
+        }
+        return new ReservoirStore(directory, config, readExecutor, writeExecutor,
+                mainThreadExecutor, AndroidSchedulers.mainThread());
+    }
+
+    /**
+     * Checks if init method has been called and throws an IllegalStateException if it hasn't.
+     *
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    private static void failIfNotInitialised() {
+        if (defaultStore == null) {
+            throw new IllegalStateException("Init hasn't been called! You need to initialise " +
+                    "Reservoir before you call any other methods.");
         }
-        cache = SimpleDiskCache.open(cacheDir, 1, maxSize);
     }
 
     /**
@@ -97,7 +265,22 @@ public class Reservoir {
      */
     public static boolean contains(final String key) throws IOException {
         failIfNotInitialised();
-        return cache.contains(key);
+        return defaultStore.contains(key);
+    }
+
+    /**
+     * Returns the size and timestamps of the object with the given key. This is answered from
+     * an index kept in memory, without reading the object or counting it as used.
+     *
+     * @param key the key string.
+     * @return the size and timestamps of the object, or null if there is none or it has expired.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if the object was waiting to be written with
+     *                               write-behind, and writing it failed.
+     */
+    public static EntryStat stat(final String key) throws IOException {
+        failIfNotInitialised();
+        return defaultStore.stat(key);
     }
 
     /**
@@ -112,8 +295,72 @@ public class Reservoir {
      */
     public static void put(final String key, final Object object) throws IOException {
         failIfNotInitialised();
-        String json = sGson.toJson(object);
-        cache.put(key, json);
+        defaultStore.put(key, object);
+    }
+
+    /**
+     * Put an object into Reservoir with the given key that expires after the given time to live.
+     * This a blocking IO operation. Previously stored object with the same key (if any) will be
+     * overwritten. Once the object has expired, Reservoir behaves as if it wasn't there.
+     *
+     * @param key    the key string.
+     * @param object the object to be stored.
+     * @param ttl    the time to live, must be positive.
+     * @param unit   the unit of the time to live.
+     * @throws IllegalStateException    thrown if init method hasn't been called.
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     * @throws IOException              thrown if cache cannot be accessed.
+     */
+    public static void put(final String key, final Object object, final long ttl,
+                           final TimeUnit unit) throws IOException {
+        failIfNotInitialised();
+        defaultStore.put(key, object, ttl, unit);
+    }
+
+    /**
+     * Put several objects into Reservoir in one go. This a blocking IO operation. Previously
+     * stored objects with the same keys (if any) will be overwritten. The objects are written
+     * in iteration order and the operation stops at the first failure, leaving the objects
+     * written before it in place.
+     *
+     * @param objects the objects to be stored, mapped by their key strings.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public static void putAll(final Map<String, ?> objects) throws IOException {
+        failIfNotInitialised();
+        defaultStore.putAll(objects);
+    }
+
+    /**
+     * Put several objects into Reservoir asynchronously. All of them are written in a single
+     * background operation. Previously stored objects with the same keys (if any) will be
+     * overwritten.
+     *
+     * @param objects  the objects to be stored, mapped by their key strings.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static void putAllAsync(final Map<String, ?> objects,
+                                   final ReservoirPutCallback callback) {
+        failIfNotInitialised();
+        defaultStore.putAllAsync(objects, callback);
+    }
+
+    /**
+     * Put several objects into Reservoir asynchronously. All of them are written in a single
+     * background operation. Previously stored objects with the same keys (if any) will be
+     * overwritten.
+     *
+     * @param objects the objects to be stored, mapped by their key strings.
+     * @return an {@link Observable} that will insert the objects into Reservoir. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static Observable<Boolean> putAllUsingObservable(final Map<String, ?> objects) {
+        failIfNotInitialised();
+        return defaultStore.putAllUsingObservable(objects);
     }
 
     /**
@@ -130,7 +377,27 @@ public class Reservoir {
     public static void putAsync(final String key, final Object object,
                                 final ReservoirPutCallback callback) {
         failIfNotInitialised();
-        new PutTask(key, object, callback).execute();
+        defaultStore.putAsync(key, object, callback);
+    }
+
+    /**
+     * Put an object into Reservoir with the given key asynchronously. The object expires after
+     * the given time to live. Previously stored object with the same key (if any) will be
+     * overwritten.
+     *
+     * @param key      the key string.
+     * @param object   the object to be stored.
+     * @param ttl      the time to live, must be positive.
+     * @param unit     the unit of the time to live.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException    thrown if init method hasn't been called.
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     */
+    public static void putAsync(final String key, final Object object, final long ttl,
+                                final TimeUnit unit, final ReservoirPutCallback callback) {
+        failIfNotInitialised();
+        defaultStore.putAsync(key, object, ttl, unit, callback);
     }
 
     /**
@@ -146,18 +413,148 @@ public class Reservoir {
      */
     public static Observable<Boolean> putUsingObservable(final String key, final Object object) {
         failIfNotInitialised();
-        return Observable.create(new Observable.OnSubscribe<Boolean>() {
-            @Override
-            public void call(Subscriber<? super Boolean> subscriber) {
-                try {
-                    Reservoir.put(key, object);
-                    subscriber.onNext(true);
-                    subscriber.onCompleted();
-                } catch (Exception exception) {
-                    subscriber.onError(exception);
-                }
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return defaultStore.putUsingObservable(key, object);
+    }
+
+    /**
+     * Put an object into Reservoir with the given key asynchronously. The object expires after
+     * the given time to live. Previously stored object with the same key (if any) will be
+     * overwritten.
+     *
+     * @param key    the key string.
+     * @param object the object to be stored.
+     * @param ttl    the time to live, must be positive.
+     * @param unit   the unit of the time to live.
+     * @return an {@link Observable} that will insert the object into Reservoir. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException    thrown if init method hasn't been called.
+     * @throws IllegalArgumentException thrown if the time to live isn't positive.
+     */
+    public static Observable<Boolean> putUsingObservable(final String key, final Object object,
+                                                         final long ttl, final TimeUnit unit) {
+        failIfNotInitialised();
+        return defaultStore.putUsingObservable(key, object, ttl, unit);
+    }
+
+    /**
+     * Put raw bytes into Reservoir with the given key, without serializing them. This a blocking
+     * IO operation. Previously stored object with the same key (if any) will be overwritten.
+     * Bytes put this way can only be read back with {@link #getBytes} or
+     * {@link #openInputStream}.
+     *
+     * @param key   the key string.
+     * @param bytes the bytes to be stored.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public static void putBytes(final String key, final byte[] bytes) throws IOException {
+        failIfNotInitialised();
+        defaultStore.putBytes(key, bytes);
+    }
+
+    /**
+     * Put raw bytes into Reservoir with the given key asynchronously.
+     *
+     * @param key      the key string.
+     * @param bytes    the bytes to be stored.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirPutCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static void putBytesAsync(final String key, final byte[] bytes,
+                                     final ReservoirPutCallback callback) {
+        failIfNotInitialised();
+        defaultStore.putBytesAsync(key, bytes, callback);
+    }
+
+    /**
+     * Put raw bytes into Reservoir with the given key asynchronously.
+     *
+     * @param key   the key string.
+     * @param bytes the bytes to be stored.
+     * @return an {@link Observable} that will insert the bytes into Reservoir. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static Observable<Boolean> putBytesUsingObservable(final String key,
+                                                              final byte[] bytes) {
+        failIfNotInitialised();
+        return defaultStore.putBytesUsingObservable(key, bytes);
+    }
+
+    /**
+     * Put the contents of a stream into Reservoir with the given key, without serializing them
+     * and without holding them in memory as a whole. This a blocking IO operation. Previously
+     * stored object with the same key (if any) will be overwritten. Contents put this way can
+     * only be read back with {@link #getBytes} or {@link #openInputStream}.
+     *
+     * @param key the key string.
+     * @param in  the stream to store, which is read up to its end but not closed.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed or the stream cannot be
+     *                               read.
+     */
+    public static void putStream(final String key, final InputStream in) throws IOException {
+        failIfNotInitialised();
+        defaultStore.putStream(key, in);
+    }
+
+    /**
+     * Get the raw bytes stored with the given key. This a blocking IO operation.
+     *
+     * @param key the key string.
+     * @return the bytes if they exist.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws NullPointerException  thrown if nothing is stored with the given key.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public static byte[] getBytes(final String key) throws IOException {
+        failIfNotInitialised();
+        return defaultStore.getBytes(key);
+    }
+
+    /**
+     * Get the raw bytes stored with the given key asynchronously.
+     *
+     * @param key      the key string.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static void getBytesAsync(final String key,
+                                     final ReservoirGetCallback<byte[]> callback) {
+        failIfNotInitialised();
+        defaultStore.getBytesAsync(key, callback);
+    }
+
+    /**
+     * Get the raw bytes stored with the given key asynchronously.
+     *
+     * @param key the key string.
+     * @return an {@link Observable} that will fetch the bytes from Reservoir. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static Observable<byte[]> getBytesUsingObservable(final String key) {
+        failIfNotInitialised();
+        return defaultStore.getBytesUsingObservable(key);
+    }
+
+    /**
+     * Open a stream of the raw bytes stored with the given key, to read them without holding
+     * them in memory as a whole. The stream reads the value as it was when it was opened, even
+     * if the key is overwritten or the cache is cleared in the meantime. This a blocking IO
+     * operation.
+     *
+     * @param key the key string.
+     * @return the stream, which must be closed.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws NullPointerException  thrown if nothing is stored with the given key.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public static InputStream openInputStream(final String key) throws IOException {
+        failIfNotInitialised();
+        return defaultStore.openInputStream(key);
     }
 
     /**
@@ -172,11 +569,7 @@ public class Reservoir {
      */
     public static <T> T get(final String key, final Class<T> classOfT) throws IOException {
         failIfNotInitialised();
-        String json = cache.getString(key).getString();
-        T value = sGson.fromJson(json, classOfT);
-        if (value == null)
-            throw new NullPointerException();
-        return value;
+        return defaultStore.get(key, classOfT);
     }
 
     /**
@@ -191,11 +584,7 @@ public class Reservoir {
      */
     public static <T> T get(final String key, final Type typeOfT) throws IOException {
         failIfNotInitialised();
-        String json = cache.getString(key).getString();
-        T value = sGson.fromJson(json, typeOfT);
-        if (value == null)
-            throw new NullPointerException();
-        return value;
+        return defaultStore.get(key, typeOfT);
     }
 
     /**
@@ -211,7 +600,7 @@ public class Reservoir {
     public static <T> void getAsync(final String key, final Class<T> classOfT,
                                     final ReservoirGetCallback<T> callback) {
         failIfNotInitialised();
-        new GetTask<>(key, classOfT, callback).execute();
+        defaultStore.getAsync(key, classOfT, callback);
     }
 
     /**
@@ -227,7 +616,7 @@ public class Reservoir {
     public static <T> void getAsync(final String key, final Type typeOfT,
                                     final ReservoirGetCallback<T> callback) {
         failIfNotInitialised();
-        new GetTask<>(key, typeOfT, callback).execute();
+        defaultStore.getAsync(key, typeOfT, callback);
     }
 
     /**
@@ -242,22 +631,85 @@ public class Reservoir {
      */
     public static <T> Observable<T> getUsingObservable(final String key, final Class<T> classOfT) {
         failIfNotInitialised();
-        return Observable.create(new Observable.OnSubscribe<T>() {
-            @Override
-            public void call(Subscriber<? super T> subscriber) {
-                try {
-                    T t = Reservoir.get(key, classOfT);
-                    subscriber.onNext(t);
-                    subscriber.onCompleted();
-                } catch (Exception exception) {
-                    subscriber.onError(exception);
-                }
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return defaultStore.getUsingObservable(key, classOfT);
     }
 
     /**
-     * Get an object from Reservoir with the given key asynchronously.
+     * Get an object from Reservoir with the given key, or load it with the given loader if it
+     * doesn't exist. Objects older than the given maximum age are still returned right away and
+     * refreshed in the background. Loaded objects are put into Reservoir, and concurrent loads
+     * of the same key and type share one call to a loader. This a blocking operation when the
+     * object has to be loaded.
+     *
+     * @param <T>     the type of the object to get.
+     * @param key     the key string.
+     * @param typeOfT the type of the expected return object.
+     * @param loader  the loader of missing and stale objects.
+     * @param maxAge  the age after which an object is refreshed, must not be negative.
+     * @param unit    the unit of the maximum age.
+     * @return the stored object if it exists, or else the loaded object.
+     * @throws IllegalStateException    thrown if init method hasn't been called.
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     * @throws IOException              thrown if cache cannot be accessed or the loader fails.
+     */
+    public static <T> T get(final String key, final Type typeOfT, final ReservoirLoader<T> loader,
+                            final long maxAge, final TimeUnit unit) throws IOException {
+        failIfNotInitialised();
+        return defaultStore.get(key, typeOfT, loader, maxAge, unit);
+    }
+
+    /**
+     * Get an object from Reservoir with the given key asynchronously, or load it with the given
+     * loader if it doesn't exist. Objects older than the given maximum age are still returned
+     * right away and refreshed in the background.
+     *
+     * @param <T>      the type of the object to get.
+     * @param key      the key string.
+     * @param typeOfT  the type of the expected return object.
+     * @param loader   the loader of missing and stale objects.
+     * @param maxAge   the age after which an object is refreshed, must not be negative.
+     * @param unit     the unit of the maximum age.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException    thrown if init method hasn't been called.
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     */
+    public static <T> void getAsync(final String key, final Type typeOfT,
+                                    final ReservoirLoader<T> loader, final long maxAge,
+                                    final TimeUnit unit, final ReservoirGetCallback<T> callback) {
+        failIfNotInitialised();
+        defaultStore.getAsync(key, typeOfT, loader, maxAge, unit, callback);
+    }
+
+    /**
+     * Get an object from Reservoir with the given key asynchronously, or load it with the given
+     * loader if it doesn't exist. Objects older than the given maximum age are still returned
+     * right away and refreshed in the background.
+     *
+     * @param <T>     the type of the object to get.
+     * @param key     the key string.
+     * @param typeOfT the type of the expected return object.
+     * @param loader  the loader of missing and stale objects.
+     * @param maxAge  the age after which an object is refreshed, must not be negative.
+     * @param unit    the unit of the maximum age.
+     * @return an {@link Observable} that will fetch the object from Reservoir or the loader. By
+     * default, this will be scheduled on a background thread and will be observed on the main
+     * thread.
+     * @throws IllegalStateException    thrown if init method hasn't been called.
+     * @throws IllegalArgumentException thrown if the maximum age is negative.
+     */
+    public static <T> Observable<T> getUsingObservable(final String key, final Type typeOfT,
+                                                       final ReservoirLoader<T> loader,
+                                                       final long maxAge, final TimeUnit unit) {
+        failIfNotInitialised();
+        return defaultStore.getUsingObservable(key, typeOfT, loader, maxAge, unit);
+    }
+
+    /**
+     * Get the elements of a collection from Reservoir with the given key asynchronously. When
+     * using a {@link GsonSerializer}, elements are parsed one at a time as they are requested, so
+     * the first elements are emitted before the rest of the collection has been read and the
+     * collection is never held in memory as a whole.
      *
      * @param <T>      the type of the object to get.
      * @param key      the key string.
@@ -269,20 +721,61 @@ public class Reservoir {
      */
     public static <T> Observable<T> getUsingObservable(final String key, final Class<T> classOfT, final Type typeOfT) {
         failIfNotInitialised();
-        return Observable.create(new Observable.OnSubscribe<T>() {
-            @Override
-            public void call(Subscriber<? super T> subscriber) {
-                try {
-                    Collection<T> collectionOfT = Reservoir.get(key, typeOfT);
-                    for (T t : collectionOfT) {
-                        subscriber.onNext(t);
-                    }
-                    subscriber.onCompleted();
-                } catch (Exception exception) {
-                    subscriber.onError(exception);
-                }
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return defaultStore.getUsingObservable(key, classOfT, typeOfT);
+    }
+
+    /**
+     * Get several objects of the same type from Reservoir in one go. This a blocking IO
+     * operation.
+     *
+     * @param <T>     the type of the objects to get.
+     * @param keys    the key strings.
+     * @param typeOfT the type of the expected return objects.
+     * @return the objects that exist, mapped by their key strings. Keys that don't exist in
+     * Reservoir are left out.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public static <T> Map<String, T> getAll(final Collection<String> keys, final Type typeOfT)
+            throws IOException {
+        failIfNotInitialised();
+        return defaultStore.getAll(keys, typeOfT);
+    }
+
+    /**
+     * Get several objects of the same type from Reservoir asynchronously. All of them are read
+     * in a single background operation.
+     *
+     * @param <T>      the type of the objects to get.
+     * @param keys     the key strings.
+     * @param typeOfT  the type of the expected return objects.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirGetCallback}
+     *                 which is called upon completion with the objects that exist, mapped by
+     *                 their key strings.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static <T> void getAllAsync(final Collection<String> keys, final Type typeOfT,
+                                       final ReservoirGetCallback<Map<String, T>> callback) {
+        failIfNotInitialised();
+        defaultStore.getAllAsync(keys, typeOfT, callback);
+    }
+
+    /**
+     * Get several objects of the same type from Reservoir asynchronously. All of them are read
+     * in a single background operation.
+     *
+     * @param <T>     the type of the objects to get.
+     * @param keys    the key strings.
+     * @param typeOfT the type of the expected return objects.
+     * @return an {@link Observable} that will fetch the objects that exist, mapped by their key
+     * strings. By default, this will be scheduled on a background thread and will be observed on
+     * the main thread.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static <T> Observable<Map<String, T>> getAllUsingObservable(final Collection<String> keys,
+                                                                       final Type typeOfT) {
+        failIfNotInitialised();
+        return defaultStore.getAllUsingObservable(keys, typeOfT);
     }
 
     /**
@@ -296,7 +789,7 @@ public class Reservoir {
      */
     public static void delete(final String key) throws IOException {
         failIfNotInitialised();
-        cache.delete(key);
+        defaultStore.delete(key);
     }
 
     /**
@@ -311,7 +804,7 @@ public class Reservoir {
      */
     public static void deleteAsync(final String key, final ReservoirDeleteCallback callback) {
         failIfNotInitialised();
-        new DeleteTask(key, callback).execute();
+        defaultStore.deleteAsync(key, callback);
     }
 
     /**
@@ -326,249 +819,228 @@ public class Reservoir {
      */
     public static Observable<Boolean> deleteUsingObservable(final String key) {
         failIfNotInitialised();
-        return Observable.create(new Observable.OnSubscribe<Boolean>() {
-            @Override
-            public void call(Subscriber<? super Boolean> subscriber) {
-                try {
-                    Reservoir.delete(key);
-                    subscriber.onNext(true);
-                    subscriber.onCompleted();
-                } catch (Exception exception) {
-                    subscriber.onError(exception);
-                }
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return defaultStore.deleteUsingObservable(key);
     }
 
     /**
-     * Clears the cache. Deletes all the stored key-value pairs synchronously.
+     * Delete several objects from Reservoir in one go. This a blocking IO operation.
      *
+     * @param keys the key strings.
      * @throws IllegalStateException thrown if init method hasn't been called.
      * @throws IOException           thrown if cache cannot be accessed.
      */
-    public static void clear() throws IOException {
+    public static void deleteAll(final Collection<String> keys) throws IOException {
         failIfNotInitialised();
-        long maxSize = cache.getMaxSize();
-        cache.destroy();
-        createCache(cacheDir, maxSize);
+        defaultStore.deleteAll(keys);
     }
 
     /**
-     * Clears the cache. Deletes all the stored key-value pairs asynchronously.
+     * Delete several objects from Reservoir asynchronously. All of them are deleted in a
+     * single background operation.
      *
-     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirClearCallback}
+     * @param keys     the key strings.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirDeleteCallback}
      *                 which is called upon completion.
      * @throws IllegalStateException thrown if init method hasn't been called.
      */
-    public static void clearAsync(final ReservoirClearCallback callback) {
+    public static void deleteAllAsync(final Collection<String> keys,
+                                      final ReservoirDeleteCallback callback) {
         failIfNotInitialised();
-        new ClearTask(callback).execute();
+        defaultStore.deleteAllAsync(keys, callback);
     }
 
     /**
-     * Clears the cache. Deletes all the stored key-value pairs asynchronously.
+     * Delete several objects from Reservoir asynchronously. All of them are deleted in a
+     * single background operation.
      *
-     * @return an {@link Observable} that will clear all the key-value pairs from Reservoir.By default, this
+     * @param keys the key strings.
+     * @return an {@link Observable} that will delete the objects from Reservoir. By default, this
      * will be scheduled on a background thread and will be observed on the main thread.
      * @throws IllegalStateException thrown if init method hasn't been called.
      */
-    public static Observable<Boolean> clearUsingObservable() {
+    public static Observable<Boolean> deleteAllUsingObservable(final Collection<String> keys) {
         failIfNotInitialised();
-        return Observable.create(new Observable.OnSubscribe<Boolean>() {
-            @Override
-            public void call(Subscriber<? super Boolean> subscriber) {
-                try {
-                    Reservoir.clear();
-                    subscriber.onNext(true);
-                    subscriber.onCompleted();
-                } catch (Exception exception) {
-                    subscriber.onError(exception);
-                }
-            }
-        }).subscribeOn(Schedulers.io()).observeOn(AndroidSchedulers.mainThread());
+        return defaultStore.deleteAllUsingObservable(keys);
     }
 
     /**
-     * Returns the number of bytes being used currently by the cache.
+     * Returns the keys of the objects in Reservoir that start with the given prefix, for example
+     * the keys of a user's objects if their keys start with the user's id. The keys are listed
+     * from an index kept in memory, without reading the objects. Objects stored by versions of
+     * Reservoir that didn't record their key aren't listed.
      *
+     * @param prefix the prefix, or an empty string for all keys.
+     * @return the keys, in ascending order.
      * @throws IllegalStateException thrown if init method hasn't been called.
-     * @throws IOException           thrown if cache cannot be accessed.
      */
-    static long bytesUsed() throws IOException {
+    public static List<String> keys(final String prefix) {
         failIfNotInitialised();
-        return cache.bytesUsed();
+        return defaultStore.keys(prefix);
     }
 
     /**
-     * AsyncTask to perform put operation in a background thread.
+     * Delete the objects whose keys start with the given prefix. This a blocking IO operation.
+     * Unlike {@link #clear()}, the objects of other keys stay in place.
+     *
+     * @param prefix the prefix.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
      */
-    private static class PutTask extends AsyncTask<Void, Void, Void> {
-        private final String key;
-        private Exception e;
-        private final ReservoirPutCallback callback;
-        final Object object;
-
-        private PutTask(String key, Object object, ReservoirPutCallback callback) {
-            this.key = key;
-            this.callback = callback;
-            this.object = object;
-            this.e = null;
-        }
-
-        @Override
-        protected Void doInBackground(Void... params) {
-
-            try {
-                String json = sGson.toJson(object);
-                cache.put(key, json);
-            } catch (Exception e) {
-                this.e = e;
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            if (callback != null) {
-                if (e == null) {
-                    callback.onSuccess();
-                } else {
-                    callback.onFailure(e);
-                }
-            }
-        }
-
+    public static void deletePrefix(final String prefix) throws IOException {
+        failIfNotInitialised();
+        defaultStore.deletePrefix(prefix);
     }
 
     /**
-     * AsyncTask to perform get operation in a background thread.
+     * Delete the objects whose keys start with the given prefix asynchronously.
+     *
+     * @param prefix   the prefix.
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirDeleteCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if init method hasn't been called.
      */
-    private static class GetTask<T> extends AsyncTask<Void, Void, T> {
-        private final String key;
-        private final ReservoirGetCallback callback;
-        private final Class<T> classOfT;
-        private final Type typeOfT;
-        private Exception e;
-
-        private GetTask(String key, Class<T> classOfT, ReservoirGetCallback callback) {
-            this.key = key;
-            this.callback = callback;
-            this.classOfT = classOfT;
-            this.typeOfT = null;
-            this.e = null;
-        }
-
-        private GetTask(String key, Type typeOfT, ReservoirGetCallback callback) {
-            this.key = key;
-            this.callback = callback;
-            this.classOfT = null;
-            this.typeOfT = typeOfT;
-            this.e = null;
-        }
-
-        @Override
-        protected T doInBackground(Void... params) {
-            try {
-                String json = cache.getString(key).getString();
-                T value;
-                if (classOfT != null) {
-                    value = sGson.fromJson(json, classOfT);
-                } else {
-                    value = sGson.fromJson(json, typeOfT);
-                }
-                if (value == null) {
-                    throw new NullPointerException();
-                }
-                return value;
-            } catch (Exception e) {
-                this.e = e;
-                return null;
-            }
-        }
-
-        @Override
-        protected void onPostExecute(T object) {
-            if (callback != null) {
-                if (e == null) {
-                    callback.onSuccess(object);
-                } else {
-                    callback.onFailure(e);
-                }
-            }
-        }
-
+    public static void deletePrefixAsync(final String prefix,
+                                         final ReservoirDeleteCallback callback) {
+        failIfNotInitialised();
+        defaultStore.deletePrefixAsync(prefix, callback);
     }
 
     /**
-     * AsyncTask to perform delete operation in a background thread.
+     * Delete the objects whose keys start with the given prefix asynchronously.
+     *
+     * @param prefix the prefix.
+     * @return an {@link Observable} that will delete the objects from Reservoir. By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if init method hasn't been called.
      */
-    private static class DeleteTask extends AsyncTask<Void, Void, Void> {
-        private final String key;
-        private Exception e;
-        private final ReservoirDeleteCallback callback;
+    public static Observable<Boolean> deletePrefixUsingObservable(final String prefix) {
+        failIfNotInitialised();
+        return defaultStore.deletePrefixUsingObservable(prefix);
+    }
 
-        private DeleteTask(String key, ReservoirDeleteCallback callback) {
-            this.key = key;
-            this.callback = callback;
-            this.e = null;
-        }
+    /**
+     * Clears the cache. The stored key-value pairs are gone for every operation that starts
+     * after this returns, but their files are deleted from disk in the background, once the
+     * operations that were still reading them have finished. Returning doesn't mean the files
+     * are gone, so the disk space they take is reclaimed a little later.
+     *
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    public static void clear() throws IOException {
+        failIfNotInitialised();
+        defaultStore.clear();
+    }
 
-        @Override
-        protected Void doInBackground(Void... params) {
-            try {
-                cache.delete(key);
-            } catch (Exception e) {
-                this.e = e;
-            }
-            return null;
-        }
+    /**
+     * Clears the cache asynchronously. See {@link #clear()} for when the disk space is
+     * reclaimed.
+     *
+     * @param callback a callback of type {@link com.anupcowkur.reservoir.ReservoirClearCallback}
+     *                 which is called upon completion.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static void clearAsync(final ReservoirClearCallback callback) {
+        failIfNotInitialised();
+        defaultStore.clearAsync(callback);
+    }
 
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            if (callback != null) {
-                if (e == null) {
-                    callback.onSuccess();
-                } else {
-                    callback.onFailure(e);
-                }
-            }
-        }
+    /**
+     * Clears the cache asynchronously. See {@link #clear()} for when the disk space is
+     * reclaimed.
+     *
+     * @return an {@link Observable} that will clear all the key-value pairs from Reservoir.By default, this
+     * will be scheduled on a background thread and will be observed on the main thread.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static Observable<Boolean> clearUsingObservable() {
+        failIfNotInitialised();
+        return defaultStore.clearUsingObservable();
+    }
 
+    /**
+     * Writes the objects that are waiting to be written with
+     * {@link ReservoirConfig.Builder#writeBehind write-behind} to disk. This a blocking IO
+     * operation. Objects that fail to be written are dropped, and the first failure is thrown
+     * once the others have been written. Does nothing if write-behind isn't enabled.
+     *
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if an object cannot be written.
+     */
+    public static void flush() throws IOException {
+        failIfNotInitialised();
+        defaultStore.flush();
     }
 
     /**
-     * AsyncTask to perform clear operation in a background thread.
+     * Maintains the disk cache: deletes expired objects, trims the cache down to the
+     * {@link ReservoirConfig.Builder#lowWaterMark low-water mark} if one is configured, and writes
+     * the journal entries that are still buffered. This a blocking IO operation. Running it when
+     * the app goes idle keeps that work away from the operations that follow.
+     *
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
      */
-    private static class ClearTask extends AsyncTask<Void, Void, Void> {
-        private Exception e;
-        private final ReservoirClearCallback callback;
+    public static void runMaintenance() throws IOException {
+        failIfNotInitialised();
+        defaultStore.runMaintenance();
+    }
 
-        private ClearTask(ReservoirClearCallback callback) {
-            this.callback = callback;
-            this.e = null;
-        }
+    /**
+     * Runs {@link #runMaintenance()} on a low priority background thread and returns
+     * immediately, for example when the app goes to the background. Failures are ignored, since
+     * the cache stays usable without maintenance.
+     *
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static void requestMaintenance() {
+        failIfNotInitialised();
+        defaultStore.requestMaintenance();
+    }
 
-        @Override
-        protected Void doInBackground(Void... params) {
-            try {
-                clear();
-            } catch (Exception e) {
-                this.e = e;
-            }
-            return null;
-        }
+    /**
+     * Returns the number of bytes being used currently by the cache.
+     *
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     * @throws IOException           thrown if cache cannot be accessed.
+     */
+    static long bytesUsed() throws IOException {
+        failIfNotInitialised();
+        return defaultStore.bytesUsed();
+    }
 
-        @Override
-        protected void onPostExecute(Void aVoid) {
-            if (callback != null) {
-                if (e == null) {
-                    callback.onSuccess();
-                } else {
-                    callback.onFailure(e);
-                }
-            }
-        }
+    /**
+     * Returns a snapshot of the statistics of the default store since it was opened: hits,
+     * misses, evictions, bytes read and written, and how long reads and writes spent on disk and
+     * in the serializer.
+     *
+     * @return the statistics.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static CacheStats stats() {
+        failIfNotInitialised();
+        return defaultStore.stats();
+    }
 
+    /**
+     * Returns the number of reads that were served by the memory cache.
+     *
+     * @return the memory cache hit count, or 0 if the memory cache is disabled.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static long memoryCacheHitCount() {
+        failIfNotInitialised();
+        return defaultStore.memoryCacheHitCount();
     }
 
+    /**
+     * Returns the number of reads that were not served by the memory cache and went to disk.
+     *
+     * @return the memory cache miss count, or 0 if the memory cache is disabled.
+     * @throws IllegalStateException thrown if init method hasn't been called.
+     */
+    public static long memoryCacheMissCount() {
+        failIfNotInitialised();
+        return defaultStore.memoryCacheMissCount();
+    }
 }
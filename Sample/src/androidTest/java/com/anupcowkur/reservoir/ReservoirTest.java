@@ -1,17 +1,39 @@
 package com.anupcowkur.reservoir;
 
+import android.support.test.InstrumentationRegistry;
 import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.suitebuilder.annotation.LargeTest;
 
 import com.anupcowkur.reservoirsample.MainActivity;
+import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.jakewharton.disklrucache.DiskLruCache;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -21,6 +43,11 @@ import org.junit.runner.RunWith;
 import rx.Observer;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.junit.Assert.assertThat;
@@ -94,6 +121,33 @@ public class ReservoirTest {
         });
     }
 
+    @Test
+    public void testAsyncShouldPutAndGetBytes() throws Exception {
+        final byte[] testPutBytes = TEST_STRING.getBytes("UTF-8");
+
+        Reservoir.putBytesAsync(KEY, testPutBytes, new ReservoirPutCallback() {
+            @Override
+            public void onSuccess() {
+                Reservoir.getBytesAsync(KEY, new ReservoirGetCallback<byte[]>() {
+                    @Override
+                    public void onSuccess(byte[] testResultBytes) {
+                        assertTrue(Arrays.equals(testPutBytes, testResultBytes));
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        fail();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                fail();
+            }
+        });
+    }
+
     @Test
     public void testAsyncShouldPutAndGetCollectionObject() throws Exception {
         Reservoir.putAsync(KEY, TEST_COLLECTION, new ReservoirPutCallback() {
@@ -123,6 +177,197 @@ public class ReservoirTest {
         });
     }
 
+    @Test
+    public void testAsyncShouldRunOperationsOnSameKeyInOrder() throws Exception {
+        Reservoir.init(InstrumentationRegistry.getTargetContext(),
+                new ReservoirConfig.Builder(2048).executor(Executors.newFixedThreadPool(4)).build());
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<String> result = new AtomicReference<>();
+            for (int i = 0; i < 10; i++) {
+                Reservoir.putAsync(KEY, TEST_STRING + i, null);
+            }
+            Reservoir.getAsync(KEY, String.class, new ReservoirGetCallback<String>() {
+                @Override
+                public void onSuccess(String object) {
+                    result.set(object);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    latch.countDown();
+                }
+            });
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(TEST_STRING + 9, result.get());
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testAsyncShouldShareOneLoadBetweenConcurrentGets() throws Exception {
+        final List<Runnable> submitted = new ArrayList<>();
+        Reservoir.init(InstrumentationRegistry.getTargetContext(),
+                new ReservoirConfig.Builder(2048).executor(new Executor() {
+                    @Override
+                    public void execute(Runnable runnable) {
+                        submitted.add(runnable);
+                    }
+                }).build());
+        try {
+            Reservoir.put(KEY, TEST_STRING);
+            final CountDownLatch latch = new CountDownLatch(5);
+            for (int i = 0; i < 5; i++) {
+                Reservoir.getAsync(KEY, String.class, new ReservoirGetCallback<String>() {
+                    @Override
+                    public void onSuccess(String object) {
+                        if (TEST_STRING.equals(object)) {
+                            latch.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                    }
+                });
+            }
+
+            assertEquals(1, submitted.size());
+            submitted.get(0).run();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testSyncShouldLoadMissingObjectsAndRefreshStaleObjects() throws Exception {
+        Reservoir.init(InstrumentationRegistry.getTargetContext(),
+                new ReservoirConfig.Builder(2048).executor(new Executor() {
+                    @Override
+                    public void execute(Runnable runnable) {
+                        runnable.run();
+                    }
+                }).build());
+        try {
+            final AtomicInteger loads = new AtomicInteger();
+            ReservoirLoader<String> loader = new ReservoirLoader<String>() {
+                @Override
+                public String load(String key) {
+                    return TEST_STRING + loads.incrementAndGet();
+                }
+            };
+            Reservoir.delete(KEY);
+
+            assertEquals(TEST_STRING + 1, Reservoir.get(KEY, String.class, loader, 1,
+                    TimeUnit.HOURS));
+            assertEquals(TEST_STRING + 1, Reservoir.get(KEY, String.class, loader, 1,
+                    TimeUnit.HOURS));
+            assertEquals(1, loads.get());
+
+            assertEquals(TEST_STRING + 1, Reservoir.get(KEY, String.class, loader, 0,
+                    TimeUnit.HOURS));
+            assertEquals(2, loads.get());
+            assertEquals(TEST_STRING + 2, Reservoir.get(KEY, String.class));
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testSyncShouldNotWriteLoadedObjectBackAfterClear() throws Exception {
+        final ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "loaded", new ReservoirConfig.Builder(2048).build());
+        try {
+            store.delete(KEY);
+            final CountDownLatch loading = new CountDownLatch(1);
+            final CountDownLatch cleared = new CountDownLatch(1);
+            final ReservoirLoader<String> loader = new ReservoirLoader<String>() {
+                @Override
+                public String load(String key) throws Exception {
+                    loading.countDown();
+                    cleared.await();
+                    return TEST_STRING;
+                }
+            };
+            final AtomicReference<Object> result = new AtomicReference<>();
+            Thread getter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result.set(store.get(KEY, String.class, loader, 1, TimeUnit.HOURS));
+                    } catch (Exception e) {
+                        result.set(e);
+                    }
+                }
+            });
+            getter.start();
+
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            store.clear();
+            cleared.countDown();
+            getter.join(5000);
+
+            assertEquals(TEST_STRING, result.get());
+            assertFalse(store.contains(KEY));
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testAsyncShouldShareOneLoadBetweenConcurrentMisses() throws Exception {
+        final List<Runnable> submitted = new ArrayList<>();
+        Reservoir.init(InstrumentationRegistry.getTargetContext(),
+                new ReservoirConfig.Builder(2048).executor(new Executor() {
+                    @Override
+                    public void execute(Runnable runnable) {
+                        submitted.add(runnable);
+                    }
+                }).build());
+        try {
+            Reservoir.delete(KEY);
+            final AtomicInteger loads = new AtomicInteger();
+            ReservoirLoader<String> loader = new ReservoirLoader<String>() {
+                @Override
+                public String load(String key) {
+                    loads.incrementAndGet();
+                    return TEST_STRING;
+                }
+            };
+            final CountDownLatch latch = new CountDownLatch(3);
+            for (int i = 0; i < 3; i++) {
+                Reservoir.getAsync(KEY, String.class, loader, 1, TimeUnit.HOURS,
+                        new ReservoirGetCallback<String>() {
+                            @Override
+                            public void onSuccess(String object) {
+                                if (TEST_STRING.equals(object)) {
+                                    latch.countDown();
+                                }
+                            }
+
+                            @Override
+                            public void onFailure(Exception e) {
+                            }
+                        });
+            }
+
+            // Run the gets that queue up behind the first one before its load.
+            while (!submitted.isEmpty()) {
+                submitted.remove(submitted.size() - 1).run();
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+            assertEquals(TEST_STRING, Reservoir.get(KEY, String.class));
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
     @Test
     public void testRxShouldPutAndGetObject() throws Exception {
         TestClass testPutObject = new TestClass();
@@ -207,6 +452,538 @@ public class ReservoirTest {
         });
     }
 
+    @Test
+    public void testRxShouldStreamOnlyRequestedCollectionElements() throws Exception {
+        final String[] strings = {"one", "two", "three", "four"};
+
+        Reservoir.put(KEY, new ArrayList<>(Arrays.asList(strings)));
+
+        final Type testResultType = new TypeToken<List<String>>() {
+        }.getType();
+
+        Reservoir.getUsingObservable(KEY, String.class, testResultType).take(2).toList()
+                .subscribe(new Observer<List<String>>() {
+                    @Override
+                    public void onCompleted() {
+
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        fail();
+                    }
+
+                    @Override
+                    public void onNext(List<String> testResultStrings) {
+                        assertEquals(Arrays.asList("one", "two"), testResultStrings);
+                    }
+                });
+    }
+
+    @Test
+    public void testRxShouldStreamCollectionElementsOfGenericType() throws Exception {
+        TestClass testClass = new TestClass();
+        testClass.setTestString(TEST_STRING);
+        Map<String, TestClass> map = new LinkedHashMap<>();
+        map.put(KEY, testClass);
+        Reservoir.put(KEY, Arrays.asList(map, map));
+
+        final Type testResultType = new TypeToken<List<Map<String, TestClass>>>() {
+        }.getType();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<List<?>> result = new AtomicReference<>();
+        Reservoir.getUsingObservable(KEY, Map.class, testResultType).toList()
+                .subscribe(new Observer<List<?>>() {
+                    @Override
+                    public void onCompleted() {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onNext(List<?> testResults) {
+                        result.set(testResults);
+                    }
+                });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(2, result.get().size());
+        for (Object testResult : result.get()) {
+            TestClass element = (TestClass) ((Map<?, ?>) testResult).get(KEY);
+            assertEquals(TEST_STRING, element.getTestString());
+        }
+    }
+
+    @Test
+    public void testRxShouldCallOnFailureWhenCollectionDoesNotExist() throws Exception {
+        Type testResultType = new TypeToken<List<String>>() {
+        }.getType();
+
+        Reservoir.getUsingObservable("non_existent_key", String.class, testResultType)
+                .subscribe(new Observer<String>() {
+                    @Override
+                    public void onCompleted() {
+                        fail();
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        assertThat(e, instanceOf(NullPointerException.class));
+                    }
+
+                    @Override
+                    public void onNext(String testResultString) {
+                        fail();
+                    }
+                });
+    }
+
+    @Test
+    public void testSyncShouldServeRepeatedGetsFromMemoryCache() throws Exception {
+        Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048, 1024);
+        try {
+            TestClass testPutObject = new TestClass();
+            testPutObject.setTestString(TEST_STRING);
+            Reservoir.put(KEY, testPutObject);
+
+            TestClass first = Reservoir.get(KEY, TestClass.class);
+            TestClass second = Reservoir.get(KEY, TestClass.class);
+
+            assertSame(first, second);
+            assertEquals(1, Reservoir.memoryCacheHitCount());
+            assertEquals(1, Reservoir.memoryCacheMissCount());
+
+            Reservoir.put(KEY, testPutObject);
+
+            assertNotSame(first, Reservoir.get(KEY, TestClass.class));
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testSyncShouldRecordStatsAndNotifyListener() throws Exception {
+        final List<String> events = new ArrayList<>();
+        Reservoir.init(InstrumentationRegistry.getTargetContext(), new ReservoirConfig.Builder(2048)
+                .listener(new CacheListener() {
+                    @Override
+                    public void onGet(String key, boolean hit, long bytes, long ioNanos,
+                                      long serializerNanos) {
+                        events.add("get " + key + " " + hit);
+                    }
+
+                    @Override
+                    public void onPut(String key, long bytes, long ioNanos, long serializerNanos) {
+                        events.add("put " + key);
+                    }
+
+                    @Override
+                    public void onDelete(String key) {
+                        events.add("delete " + key);
+                    }
+
+                    @Override
+                    public void onEviction(String key, long bytes) {
+                        events.add("evict " + key);
+                    }
+
+                    @Override
+                    public void onClear() {
+                        events.add("clear");
+                    }
+                })
+                .build());
+        try {
+            Reservoir.put(KEY, TEST_STRING);
+            Reservoir.get(KEY, String.class);
+            try {
+                Reservoir.get("missing", String.class);
+                fail();
+            } catch (NullPointerException expected) {
+            }
+            Reservoir.delete(KEY);
+            Reservoir.clear();
+
+            CacheStats stats = Reservoir.stats();
+            assertEquals(1, stats.hitCount());
+            assertEquals(1, stats.missCount());
+            assertEquals(0.5, stats.hitRate());
+            assertEquals(1, stats.putCount());
+            assertEquals(1, stats.deleteCount());
+            assertEquals(1, stats.clearCount());
+            assertTrue(stats.bytesWritten() > 0);
+            assertEquals(stats.bytesWritten(), stats.bytesRead());
+            assertEquals(1, stats.serializeLatency().count());
+            assertEquals(1, stats.deserializeLatency().count());
+            assertEquals(2, stats.readLatency().count());
+            assertEquals(Arrays.asList("put " + KEY, "get " + KEY + " true", "get missing false",
+                    "delete " + KEY, "clear"), events);
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testSyncShouldPutAndGetBytes() throws Exception {
+        byte[] testPutBytes = new byte[256];
+        for (int i = 0; i < testPutBytes.length; i++) {
+            testPutBytes[i] = (byte) i;
+        }
+        Reservoir.putBytes(KEY, testPutBytes);
+
+        assertTrue(Arrays.equals(testPutBytes, Reservoir.getBytes(KEY)));
+    }
+
+    @Test
+    public void testSyncShouldPutStreamAndOpenInputStream() throws Exception {
+        byte[] testPutBytes = TestUtils.getLargeString().substring(0, 1000).getBytes("UTF-8");
+        Reservoir.putStream(KEY, new ByteArrayInputStream(testPutBytes));
+
+        InputStream in = Reservoir.openInputStream(KEY);
+        Reservoir.putBytes(KEY, new byte[]{1});
+        ByteArrayOutputStream testResultBytes = new ByteArrayOutputStream();
+        try {
+            int b;
+            while ((b = in.read()) != -1) {
+                testResultBytes.write(b);
+            }
+        } finally {
+            in.close();
+        }
+
+        assertTrue(Arrays.equals(testPutBytes, testResultBytes.toByteArray()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testSyncShouldThrowNullPointerExceptionWhenBytesDoNotExist() throws Exception {
+        Reservoir.getBytes(KEY);
+    }
+
+    @Test
+    public void testSyncShouldPutGetAndDeleteAll() throws Exception {
+        Map<String, String> testStrings = new LinkedHashMap<>();
+        testStrings.put("key1", "one");
+        testStrings.put("key2", "two");
+
+        Reservoir.putAll(testStrings);
+
+        Map<String, String> testResultStrings = Reservoir.getAll(
+                Arrays.asList("key1", "key2", "non_existent_key"), String.class);
+
+        assertEquals(testStrings, testResultStrings);
+
+        Reservoir.deleteAll(testStrings.keySet());
+
+        assertEquals(false, Reservoir.contains("key1"));
+        assertEquals(false, Reservoir.contains("key2"));
+    }
+
+    @Test
+    public void testRxShouldPutAndGetAll() throws Exception {
+        final Map<String, String> testStrings = new LinkedHashMap<>();
+        testStrings.put("key1", "one");
+        testStrings.put("key2", "two");
+
+        Reservoir.putAllUsingObservable(testStrings).subscribe(new Observer<Boolean>() {
+            @Override
+            public void onCompleted() {
+
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                fail();
+            }
+
+            @Override
+            public void onNext(Boolean success) {
+                Reservoir.<String>getAllUsingObservable(testStrings.keySet(), String.class)
+                        .subscribe(new Observer<Map<String, String>>() {
+                            @Override
+                            public void onCompleted() {
+
+                            }
+
+                            @Override
+                            public void onError(Throwable e) {
+                                fail();
+                            }
+
+                            @Override
+                            public void onNext(Map<String, String> testResultStrings) {
+                                assertEquals(testStrings, testResultStrings);
+                            }
+                        });
+            }
+        });
+    }
+
+    @Test
+    public void testSyncShouldPutAndGetObjectWithBinarySerializer() throws Exception {
+        Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048, new BinarySerializer());
+        try {
+            TestClass testPutObject = new TestClass();
+            testPutObject.setTestString(TEST_STRING);
+            Reservoir.put(KEY, testPutObject);
+
+            TestClass testResultObject = Reservoir.get(KEY, TestClass.class);
+
+            assertEquals(TEST_STRING, testResultObject.getTestString());
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testSyncShouldRejectMalformedLengthsWithBinarySerializer() throws Exception {
+        BinarySerializer serializer = new BinarySerializer();
+        // Version 1, a string of 2^32 - 1 bytes and then a string of 100 bytes with 1 left.
+        byte[][] malformed = {
+                {1, 5, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F},
+                {1, 5, 100, 'a'},
+        };
+        for (byte[] bytes : malformed) {
+            try {
+                serializer.deserialize(new ByteArrayInputStream(bytes), String.class);
+                fail();
+            } catch (IOException expected) {
+            }
+            try {
+                serializer.deserialize(ByteBuffer.wrap(bytes), String.class);
+                fail();
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testSyncShouldPutAndGetCompressedObject() throws Exception {
+        Reservoir.init(InstrumentationRegistry.getTargetContext(),
+                new ReservoirConfig.Builder(2048).compressionThreshold(64).build());
+        try {
+            String largeString = TestUtils.getLargeString();
+            Reservoir.put(KEY, largeString);
+            Reservoir.put("smallKey", TEST_STRING);
+
+            assertEquals(largeString, Reservoir.get(KEY, String.class));
+            assertEquals(TEST_STRING, Reservoir.get("smallKey", String.class));
+        } finally {
+            Reservoir.init(InstrumentationRegistry.getTargetContext(), 2048);
+        }
+    }
+
+    @Test
+    public void testSyncShouldKeepNamedStoresIndependent() throws Exception {
+        ReservoirStore sessions = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "sessions", 2048);
+        ReservoirStore blobs = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "blobs", 1024);
+        assertSame(sessions, Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "sessions", 2048));
+
+        sessions.put(KEY, TEST_STRING);
+        for (int i = 0; i < 20; i++) {
+            blobs.put(KEY + i, TestUtils.getLargeString().substring(0, 200));
+        }
+
+        assertEquals(TEST_STRING, sessions.get(KEY, String.class));
+        assertFalse(blobs.contains(KEY));
+        assertFalse(Reservoir.contains(KEY + 0));
+        sessions.clear();
+        blobs.clear();
+    }
+
+    @Test
+    public void testSyncShouldReadObjectsThroughMappedFiles() throws Exception {
+        ReservoirStore binary = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "mapped_binary", new ReservoirConfig.Builder(4096)
+                        .serializer(new BinarySerializer())
+                        .mappedReadThreshold(0)
+                        .build());
+        ReservoirStore json = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "mapped_json", new ReservoirConfig.Builder(4096).mappedReadThreshold(0).build());
+        try {
+            for (ReservoirStore store : Arrays.asList(binary, json)) {
+                TestClass testPutObject = new TestClass();
+                testPutObject.setTestString(TEST_STRING);
+                store.put(KEY, testPutObject);
+
+                TestClass testResultObject = store.get(KEY, TestClass.class);
+                assertEquals(TEST_STRING, testResultObject.getTestString());
+
+                store.put(KEY, "overwritten");
+                assertEquals("overwritten", store.get(KEY, String.class));
+            }
+        } finally {
+            binary.clear();
+            json.clear();
+        }
+    }
+
+    @Test
+    public void testSyncShouldTrimToLowWaterMarkDuringMaintenance() throws Exception {
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "trimmed", new ReservoirConfig.Builder(4096).lowWaterMark(1024).build());
+        try {
+            for (int i = 0; i < 10; i++) {
+                store.put(KEY + i, TestUtils.getLargeString().substring(0, 300));
+            }
+            assertTrue(store.bytesUsed() > 1024);
+
+            store.runMaintenance();
+
+            assertTrue(store.bytesUsed() <= 1024);
+            assertTrue(store.contains(KEY + 9));
+            assertFalse(store.contains(KEY + 0));
+        } finally {
+            store.clear();
+        }
+    }
+
+    @Test
+    public void testSyncShouldStatObjectsFromIndex() throws Exception {
+        long before = System.currentTimeMillis();
+        Reservoir.put(KEY, TestUtils.getLargeString().substring(0, 1000), 1, TimeUnit.HOURS);
+
+        EntryStat stat = Reservoir.stat(KEY);
+        assertEquals(Reservoir.getBytes(KEY).length, stat.length());
+        assertTrue(stat.expiresAt() >= before + TimeUnit.HOURS.toMillis(1));
+        assertTrue(stat.lastModified() >= before - 1000);
+        assertNull(Reservoir.stat("non_existent_key"));
+
+        Reservoir.delete(KEY);
+        assertNull(Reservoir.stat(KEY));
+        assertFalse(Reservoir.contains(KEY));
+    }
+
+    @Test
+    public void testSyncShouldRebuildIndexWhenReopened() throws Exception {
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "indexed", new ReservoirConfig.Builder(1024 * 1024).build());
+        store.put(KEY, TestUtils.getLargeString(), 1, TimeUnit.HOURS);
+        EntryStat stat = store.stat(KEY);
+        store.close();
+
+        store = Reservoir.open(InstrumentationRegistry.getTargetContext(), "indexed",
+                new ReservoirConfig.Builder(1024 * 1024).build());
+        try {
+            EntryStat reopened = store.stat(KEY);
+            assertEquals(stat.length(), reopened.length());
+            assertEquals(stat.expiresAt(), reopened.expiresAt());
+            assertTrue(store.contains(KEY));
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSyncShouldListAndDeleteKeysByPrefix() throws Exception {
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "prefixed", new ReservoirConfig.Builder(1024 * 1024).build());
+        store.clear();
+        store.put("user1:b", TEST_STRING);
+        store.put("user1:a", TEST_STRING);
+        store.put("user2:a", TEST_STRING);
+        store.close();
+
+        store = Reservoir.open(InstrumentationRegistry.getTargetContext(), "prefixed",
+                new ReservoirConfig.Builder(1024 * 1024).build());
+        try {
+            assertEquals(Arrays.asList("user1:a", "user1:b"), store.keys("user1:"));
+            assertEquals(3, store.keys("").size());
+
+            store.deletePrefix("user1:");
+
+            assertFalse(store.contains("user1:a"));
+            assertFalse(store.contains("user1:b"));
+            assertTrue(store.contains("user2:a"));
+            assertEquals(Arrays.asList("user2:a"), store.keys(""));
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSyncShouldCoalesceWriteBehindPuts() throws Exception {
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "writeBehind", new ReservoirConfig.Builder(2048)
+                        .writeBehind(1, TimeUnit.HOURS, 100)
+                        .build());
+        try {
+            for (int i = 0; i < 50; i++) {
+                store.put(KEY, TEST_STRING + i);
+            }
+            store.put("deleted", TEST_STRING);
+            store.delete("deleted");
+
+            assertEquals(0, store.stats().putCount());
+            assertEquals(TEST_STRING + 49, store.get(KEY, String.class));
+            assertTrue(store.contains(KEY));
+            assertFalse(store.contains("deleted"));
+
+            store.flush();
+
+            assertEquals(1, store.stats().putCount());
+            assertEquals(TEST_STRING + 49, store.get(KEY, String.class));
+            assertFalse(store.contains("deleted"));
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSyncShouldServeCopiesOfWriteBehindPuts() throws Exception {
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "writeBehind", new ReservoirConfig.Builder(2048)
+                        .writeBehind(1, TimeUnit.HOURS, 100)
+                        .build());
+        try {
+            ArrayList<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+            store.put(KEY, list);
+            list.add("c");
+
+            ArrayList<?> read = store.get(KEY, ArrayList.class);
+            assertNotSame(list, read);
+            assertEquals(Arrays.asList("a", "b"), read);
+            assertEquals(0, store.stats().putCount());
+
+            Type listOfStrings = new TypeToken<List<String>>() {
+            }.getType();
+            List<String> strings = store.get(KEY, listOfStrings);
+            assertEquals(Arrays.asList("a", "b"), strings);
+            assertEquals(1, store.stats().putCount());
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSyncShouldTreatExpiredObjectAsMissing() throws Exception {
+        Reservoir.put(KEY, TEST_STRING, 50, TimeUnit.MILLISECONDS);
+        Reservoir.put("otherKey", TEST_STRING, 1, TimeUnit.HOURS);
+        assertTrue(Reservoir.contains(KEY));
+        assertEquals(TEST_STRING, Reservoir.get(KEY, String.class));
+
+        Thread.sleep(100);
+
+        assertFalse(Reservoir.contains(KEY));
+        assertEquals(TEST_STRING, Reservoir.get("otherKey", String.class));
+        try {
+            Reservoir.get(KEY, String.class);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
     @Test(expected = NullPointerException.class)
     public void testSyncShouldThrowNullPointerExceptionWhenObjectDoesNotExist() throws
             Exception {
@@ -371,6 +1148,140 @@ public class ReservoirTest {
         assertEquals(0, Reservoir.bytesUsed());
     }
 
+    @Test
+    public void testSyncShouldStayUsableWhileClearing() throws Exception {
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final String key = KEY + t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            Reservoir.put(key, TEST_STRING);
+                            try {
+                                assertEquals(TEST_STRING, Reservoir.get(key, String.class));
+                            } catch (NullPointerException cleared) {
+                            }
+                        }
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 0; i < 10; i++) {
+            Reservoir.clear();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @Test
+    public void testSyncShouldFailPutsAfterCloseWithoutBlocking() throws Exception {
+        final ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "closed", new ReservoirConfig.Builder(1024 * 1024).build());
+        store.close();
+        final AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2; i++) {
+                        try {
+                            store.put(KEY, TEST_STRING);
+                        } catch (IllegalStateException expected) {
+                            failures.incrementAndGet();
+                        } catch (IOException e) {
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(4, failures.get());
+    }
+
+    @Test
+    public void testSyncShouldReadCacheWrittenByVersion310() throws Exception {
+        File directory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "Reservoir_legacy");
+        TestClass testPutObject = new TestClass();
+        testPutObject.setTestString(TEST_STRING);
+        // Reservoir 3.1.0 stored the JSON of the object and a serialized empty map as metadata,
+        // under the hex MD5 of the key.
+        DiskLruCache legacy = DiskLruCache.open(directory, 1, 2, 2048);
+        String internalKey = new BigInteger(1, MessageDigest.getInstance("MD5")
+                .digest(KEY.getBytes("UTF-8"))).toString(16);
+        DiskLruCache.Editor editor = legacy.edit(internalKey);
+        ObjectOutputStream metadata = new ObjectOutputStream(editor.newOutputStream(1));
+        metadata.writeObject(new HashMap<String, Serializable>());
+        metadata.close();
+        OutputStream value = editor.newOutputStream(0);
+        value.write(new Gson().toJson(testPutObject).getBytes("UTF-8"));
+        value.close();
+        editor.commit();
+        legacy.close();
+
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "legacy", new ReservoirConfig.Builder(2048).build());
+        try {
+            assertTrue(store.contains(KEY));
+            assertEquals(0, store.stat(KEY).expiresAt());
+            assertEquals(TEST_STRING, store.get(KEY, TestClass.class).getTestString());
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testSyncShouldDeleteClearedGenerationsInBackground() throws Exception {
+        ReservoirStore store = Reservoir.open(InstrumentationRegistry.getTargetContext(),
+                "cleared", new ReservoirConfig.Builder(1024 * 1024).build());
+        try {
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 20; j++) {
+                    store.put(KEY + j, TEST_STRING);
+                }
+                store.clear();
+            }
+            store.put(KEY, TEST_STRING);
+            assertEquals(TEST_STRING, store.get(KEY, String.class));
+
+            File cacheDir = InstrumentationRegistry.getTargetContext().getCacheDir();
+            long deadline = System.currentTimeMillis() + 5000;
+            int generations;
+            do {
+                Thread.sleep(20);
+                generations = 0;
+                for (String name : cacheDir.list()) {
+                    if (name.equals("Reservoir_cleared") || name.startsWith("Reservoir_cleared.")) {
+                        generations++;
+                    }
+                }
+            } while (generations > 1 && System.currentTimeMillis() < deadline);
+            assertEquals(1, generations);
+        } finally {
+            store.clear();
+            store.close();
+        }
+    }
+
     @Test
     public void testAsyncShouldClearCache() throws Exception {
         TestClass testPutObject = new TestClass();